@@ -0,0 +1,373 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+import com.biglybt.core.util.AEThread2;
+import com.biglybt.core.util.Constants;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.SystemTime;
+	
+	/**
+	 * Removes old plugin and browser versions from the install and data directories on a low
+	 * priority background thread. Deletes are rate limited to keep the I/O impact down and the
+	 * work can be cancelled at any point
+	 */
+
+public class
+BrowserCleaner
+{
+	public static final int	DEFAULT_RETAIN_COUNT		= 3;
+	public static final int	DEFAULT_RETAIN_BUDGET_MB	= 0;
+	
+	private static final int DELETE_RATE	= 500;		// files per second
+	private static final int DELETE_BATCH	= 50;
+	
+	private final TorBrowserPlugin	plugin;
+	private final File				plugin_install_dir;
+	private final File				plugin_data_dir;
+	private final int				retain_count;
+	private final long				retain_budget;
+	private final Set<File>			protect;
+	
+	private volatile boolean		cancelled;
+	
+	private int						files_deleted;
+		
+		/**
+		 * @param _retain_count			number of versions of each item to keep, at least 1
+		 * @param _retain_budget_mb		disk budget for retained browser versions, 0 for unlimited
+		 * @param _protect				files/folders that must not be removed (e.g. the version in use)
+		 */
+	
+	protected
+	BrowserCleaner(
+		TorBrowserPlugin	_plugin,
+		File				_plugin_install_dir,
+		File				_plugin_data_dir,
+		int					_retain_count,
+		int					_retain_budget_mb,
+		Set<File>			_protect )
+	{
+		plugin				= _plugin;
+		plugin_install_dir	= _plugin_install_dir;
+		plugin_data_dir		= _plugin_data_dir;
+		retain_count		= Math.max( 1, _retain_count );
+		retain_budget		= Math.max( 0, _retain_budget_mb )*1024L*1024L;
+		protect				= _protect;
+	}
+	
+	protected void
+	start()
+	{
+		AEThread2 thread = 
+			new AEThread2( "TorBrowser:cleaner" )
+			{
+				@Override
+				public void
+				run()
+				{
+					long	start = SystemTime.getMonotonousTime();
+					
+					try{
+						long	install_dir_mtime = plugin_install_dir.lastModified();
+						
+						deleteOldStuff( plugin_install_dir, false );
+						
+						deleteOldStuff( plugin_data_dir, true );
+							
+							// free shared blobs no longer used by any retained version
+						
+						int	blobs_removed = new BrowserStore( plugin_data_dir ).gc( plugin_data_dir );
+						
+						if ( blobs_removed > 0 ){
+							
+							plugin.log( "Removed " + blobs_removed + " unreferenced files from the browser store" );
+						}
+						
+						if ( files_deleted > 0 ){
+							
+							plugin.log( "Removed " + files_deleted + " old files in " + ( SystemTime.getMonotonousTime() - start ) + "ms" );
+						}
+							
+							// our own changes to the install dir shouldn't invalidate the install index
+						
+						BrowserInstallIndex.updateInstallDirTime( plugin_data_dir, plugin_install_dir, install_dir_mtime );
+					
+					}catch( Throwable e ){
+						
+						if ( cancelled ){
+							
+							plugin.log( "Cleanup cancelled after removing " + files_deleted + " files" );
+						
+						}else{
+							
+							Debug.out( e );
+						}
+					}
+				}
+			};
+		
+		thread.setPriority( Thread.MIN_PRIORITY );
+		
+		thread.start();
+	}
+	
+	protected void
+	cancel()
+	{
+		cancelled = true;
+	}
+	
+	private void
+	deleteOldStuff(
+		File		dir,
+		boolean		apply_budget )
+		
+		throws Exception
+	{
+		File[] files = dir.listFiles();
+		
+		if ( files == null || files.length == 0 ){
+			
+			return;
+		}
+		
+		Map<String,List<Object[]>>	map = new HashMap<String,List<Object[]>>();
+		
+		for ( File f: files ){
+			
+			String name = f.getName();
+			
+			int	pos = name.lastIndexOf( '_' );
+			
+			if ( pos == -1 ){
+				
+				continue;
+			}
+			
+			String root		= name.substring( 0, pos );
+			String ver_str 	= name.substring( pos+1 );
+			
+			if ( ver_str.endsWith( ".jar" ) || ver_str.endsWith( ".zip" )){
+				
+				root += ver_str.substring(  ver_str.length() - 4 );
+				
+				ver_str = ver_str.substring( 0, ver_str.length() - 4 );
+			}
+			
+			for ( char c: ver_str.toCharArray()){
+				
+				if ( c != '.' && !Character.isDigit( c )){
+					
+					ver_str = null;
+					
+					break;
+				}
+			}
+			
+			if ( ver_str != null && ver_str.length() > 0 ){
+				
+				List<Object[]> entry = map.get( root );
+				
+				if ( entry == null ){
+					
+					entry = new ArrayList<Object[]>();
+					
+					map.put( root, entry );
+				}
+				
+				entry.add( new Object[]{ ver_str, f });
+			}
+		}
+		
+		for ( Map.Entry<String,List<Object[]>> entry: map.entrySet()){
+			
+			String 			root 	= entry.getKey();
+			List<Object[]>	list	= entry.getValue();
+			
+			Collections.sort(
+				list,
+				new Comparator<Object[]>()
+				{
+					@Override
+					public int
+					compare(
+						Object[] e1, 
+						Object[] e2) 
+					{
+						String ver1 = (String)e1[0];
+						String ver2 = (String)e2[0];
+						
+						return( Constants.compareVersions( ver1, ver2 ));
+					}
+				});
+			
+			int	ver_to_delete = list.size() - retain_count;
+			
+			for ( int i=0;i<ver_to_delete;i++ ){
+				
+				File f = (File)list.get(i)[1];
+				
+				if ( !protect.contains( f )){
+					
+					delete( f );
+				}
+			}
+				
+				// disk budget applies to the extracted browser versions, oldest go first but the
+				// current version is always retained
+			
+			if ( apply_budget && retain_budget > 0 && root.equals( "browser" )){
+				
+				List<File>	retained = new ArrayList<File>();
+				
+				for ( int i=Math.max( 0, ver_to_delete );i<list.size();i++ ){
+					
+					retained.add((File)list.get(i)[1]);
+				}
+				
+				long	total = 0;
+				
+				long[]	sizes = new long[retained.size()];
+					
+					// versions share files through hard links, count each file once against the
+					// newest version using it so a version's size is what deleting it would free
+				
+				Set<Object>	seen = new HashSet<Object>();
+				
+				for ( int i=retained.size()-1;i>=0;i-- ){
+					
+					sizes[i] = getSize( retained.get(i), seen );
+					
+					total += sizes[i];
+				}
+				
+				for ( int i=0;i<retained.size() - 1 && total > retain_budget;i++ ){
+					
+					File f = retained.get(i);
+					
+					if ( !protect.contains( f )){
+						
+						plugin.log( "Removing " + f + " as retained versions exceed disk budget" );
+						
+						delete( f );
+						
+						total -= sizes[i];
+					}
+				}
+			}
+		}
+	}
+	
+	private void
+	delete(
+		File		f )
+		
+		throws Exception
+	{
+		if ( cancelled ){
+			
+			throw( new Exception( "Cancelled" ));
+		}
+		
+		if ( f.isDirectory()){
+			
+			File[] files = f.listFiles();
+			
+			if ( files != null ){
+				
+				for ( File x: files ){
+					
+					delete( x );
+				}
+			}
+		}
+		
+		if ( f.delete()){
+			
+			files_deleted++;
+			
+			if ( files_deleted % DELETE_BATCH == 0 ){
+				
+				Thread.sleep( DELETE_BATCH * 1000 / DELETE_RATE );
+			}
+		}
+	}
+	
+	private long
+	getSize(
+		File			f,
+		Set<Object>		seen )
+		
+		throws Exception
+	{
+		if ( cancelled ){
+			
+			throw( new Exception( "Cancelled" ));
+		}
+		
+		BasicFileAttributes attrs;
+		
+		try{
+			attrs = Files.readAttributes( f.toPath(), BasicFileAttributes.class );
+			
+		}catch( IOException e ){
+			
+			return( 0 );
+		}
+		
+		if ( attrs.isDirectory()){
+			
+			long	total = 0;
+			
+			File[] files = f.listFiles();
+			
+			if ( files != null ){
+				
+				for ( File x: files ){
+					
+					total += getSize( x, seen );
+				}
+			}
+			
+			return( total );
+		}
+			
+			// no file key on some platforms (Windows), each link is counted then
+		
+		Object key = attrs.fileKey();
+		
+		if ( key != null && !seen.add( key )){
+			
+			return( 0 );
+		}
+		
+		return( attrs.size());
+	}
+
+}
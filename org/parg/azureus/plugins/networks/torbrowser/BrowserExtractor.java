@@ -0,0 +1,1056 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.biglybt.core.util.Debug;
+	
+	/**
+	 * Unpacks a browser-<ver>.zip bundle using random access to the zip's central directory
+	 * so that entries can be inflated concurrently by a small worker pool. If a previous install
+	 * is supplied then entries that are unchanged since it was extracted are hard-linked (or
+	 * copied where links aren't supported) from it rather than being inflated again.
+	 * Completed entries are recorded in a journal so that an interrupted extraction can
+	 * be resumed (journalled files are CRC checked again before being kept), each inflated
+	 * entry's CRC32 is verified as it is written. Inflated files
+	 * are also hashed and, if a store is supplied, linked into it for sharing across versions
+	 */
+
+public class
+BrowserExtractor
+{
+	private static final int BUFFER_SIZE	= 64*1024;
+	
+	private static final int MAX_THREADS	= 8;
+	
+	private static final int STOP_TIMEOUT	= 60*1000;
+	
+	private final File		zip_file;
+	private final File		target_dir;
+	
+	private static final int UNIX_HOST	= 3;
+	
+	public static final String	JOURNAL_NAME	= ".journal";
+	
+	private static final String	JOURNAL_HEADER	= "# tor browser journal v2";
+		
+		// fallback for zips built without unix attributes
+	
+	private static final String[]	EXECUTABLE_NAMES = {
+		"start-tor-browser", "firefox", "firefox.real", "firefox-bin", "plugin-container", "abicheck", "updater",
+	};
+	
+	private static final String[]	EXECUTABLE_SUFFIXES = {
+		".so", ".dylib", ".sh", ".desktop",
+	};
+	
+	private final BrowserManifest	manifest = new BrowserManifest();
+	
+	private final boolean			posix = FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" );
+	
+	private Map<String,Integer>		unix_modes = Collections.emptyMap();
+	
+	private File				previous_dir;
+	private BrowserManifest		previous_manifest;
+	
+	private BrowserStore		store;
+	
+	private BrowserManifest		journalled;
+	private Writer				journal;
+	
+	private final AtomicInteger	files_done		= new AtomicInteger();
+	private final AtomicInteger	files_linked	= new AtomicInteger();
+	private final AtomicInteger	files_copied	= new AtomicInteger();
+	private final AtomicInteger	files_resumed	= new AtomicInteger();
+	private final AtomicInteger	files_stored	= new AtomicInteger();
+	
+	private volatile int		files_total;
+	
+	private volatile boolean	cancelled;
+	
+	protected
+	BrowserExtractor(
+		File		_zip_file,
+		File		_target_dir )
+	{
+		zip_file	= _zip_file;
+		target_dir	= _target_dir;
+	}
+		
+		/**
+		 * @param dir		previous browser_<ver> install
+		 * @param _manifest	its manifest, if null unchanged files are detected by size and CRC of the existing file
+		 */
+	
+	protected void
+	setPreviousInstall(
+		File				dir,
+		BrowserManifest		_manifest )
+	{
+		previous_dir		= dir;
+		previous_manifest	= _manifest;
+	}
+		
+		/**
+		 * @return true if the target directory contains a journal from an earlier extraction of the same zip
+		 */
+	
+	protected static boolean
+	canResume(
+		File		target_dir,
+		File		zip_file )
+	{
+		File	journal_file = new File( target_dir, JOURNAL_NAME );
+		
+		if ( !journal_file.exists()){
+			
+			return( false );
+		}
+		
+		try{
+			LineNumberReader lnr = new LineNumberReader( new InputStreamReader( new FileInputStream( journal_file ), "UTF-8" ));
+			
+			try{
+				String header = lnr.readLine();
+				
+				return( header != null && header.equals( getJournalHeader( zip_file )));
+			
+			}finally{
+				
+				lnr.close();
+			}
+		}catch( Throwable e ){
+			
+			return( false );
+		}
+	}
+	
+	private static String
+	getJournalHeader(
+		File		zip_file )
+	{
+		return( JOURNAL_HEADER + "\t" + zip_file.getName() + "\t" + zip_file.length() + "\t" + zip_file.lastModified());
+	}
+	
+		/**
+		 * Stops the extraction at the next entry (or buffer of an entry being inflated). Completed
+		 * entries are left in the journal so a later run can resume
+		 */
+	
+	protected void
+	cancel()
+	{
+		cancelled = true;
+	}
+	
+	private void
+	checkCancelled()
+		
+		throws IOException
+	{
+		if ( cancelled ){
+			
+			throw( new IOException( "Extraction cancelled" ));
+		}
+	}
+	
+	protected void
+	setStore(
+		BrowserStore	_store )
+	{
+		store	= _store;
+	}
+	
+	protected void
+	extract()
+		
+		throws Exception
+	{
+		final ZipFile zip = new ZipFile( zip_file );
+		
+			// the workers share the zip and journal so they can't be closed while any are still running
+		
+		boolean	workers_stopped = true;
+		
+		try{
+			List<ZipEntry>	entries = new ArrayList<ZipEntry>( zip.size());
+			
+			Set<File>	dirs = new HashSet<File>();
+			
+			Enumeration<? extends ZipEntry> it = zip.entries();
+			
+			while( it.hasMoreElements()){
+				
+				ZipEntry entry = it.nextElement();
+				
+				if ( entry.isDirectory()){
+					
+					continue;
+				}
+				
+				entries.add( entry );
+				
+				File parent_folder = getTarget( entry ).getParentFile();
+				
+				if ( parent_folder != null ){
+					
+					dirs.add( parent_folder );
+				}
+			}
+			
+			files_total = entries.size();
+			
+			if ( posix ){
+				
+				unix_modes = readUnixModes();
+			}
+				
+				// create the folder structure up front so the workers don't contend on it
+			
+			for ( File dir: dirs ){
+				
+				if ( !dir.isDirectory()){
+					
+					if ( !dir.mkdirs() && !dir.isDirectory()){
+						
+						throw( new Exception( "Failed to create dir: " + dir ));
+					}
+				}
+			}
+			
+			if ( !target_dir.isDirectory() && !target_dir.mkdirs()){
+				
+				throw( new Exception( "Failed to create dir: " + target_dir ));
+			}
+			
+			openJournal();
+				
+				// biggest first to avoid ending up waiting on a single large entry
+			
+			Collections.sort(
+				entries,
+				new Comparator<ZipEntry>()
+				{
+					@Override
+					public int
+					compare(
+						ZipEntry	e1,
+						ZipEntry	e2 )
+					{
+						return( Long.compare( e2.getCompressedSize(), e1.getCompressedSize()));
+					}
+				});
+			
+			int	num_threads = Math.max( 1, Math.min( MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+			
+			checkCancelled();
+			
+			workers_stopped = false;
+			
+			ExecutorService pool =
+				Executors.newFixedThreadPool(
+					num_threads,
+					new ThreadFactory()
+					{
+						private final AtomicInteger	num = new AtomicInteger();
+						
+						@Override
+						public Thread
+						newThread(
+							Runnable r )
+						{
+							Thread t = new Thread( r, "TorBrowser:extract:" + num.incrementAndGet());
+							
+							t.setDaemon( true );
+							
+							return( t );
+						}
+					});
+			
+			try{
+				final ThreadLocal<byte[]>	buffers =
+					new ThreadLocal<byte[]>()
+					{
+						@Override
+						protected byte[]
+						initialValue()
+						{
+							return( new byte[BUFFER_SIZE] );
+						}
+					};
+				
+				List<Future<?>>	futures = new ArrayList<Future<?>>( entries.size());
+				
+				for ( final ZipEntry entry: entries ){
+					
+					futures.add(
+						pool.submit(
+							new Callable<Void>()
+							{
+								@Override
+								public Void
+								call()
+									
+									throws Exception
+								{
+									checkCancelled();
+									
+									extractEntry( zip, entry, buffers.get());
+									
+									files_done.incrementAndGet();
+									
+									return( null );
+								}
+							}));
+				}
+				
+				try{
+					for ( Future<?> f: futures ){
+						
+						f.get();
+					}
+				}catch( ExecutionException e ){
+					
+					checkCancelled();
+					
+					Throwable cause = e.getCause();
+					
+					throw( new Exception( "Extraction of " + zip_file + " failed", cause==null?e:cause ));
+				}
+			}finally{
+					
+					// after a failure any workers still inflating stop mid-entry rather than finishing
+				
+				cancelled = true;
+				
+				pool.shutdownNow();
+				
+				if ( !pool.awaitTermination( STOP_TIMEOUT, TimeUnit.MILLISECONDS )){
+					
+					throw( new Exception( "Extraction threads failed to stop" ));
+				}
+				
+				workers_stopped = true;
+			}
+			
+			manifest.write( target_dir );
+			
+			closeJournal();
+			
+			new File( target_dir, JOURNAL_NAME ).delete();
+		
+		}finally{
+			
+			if ( workers_stopped ){
+			
+				closeJournal();
+				
+				try{
+					zip.close();
+				
+				}catch( Throwable e ){
+					
+					Debug.out( e );
+				}
+			}else{
+				
+				Debug.out( "Extraction threads still running, leaving " + zip_file + " open" );
+			}
+		}
+	}
+	
+	protected int
+	getFilesDone()
+	{
+		return( files_done.get());
+	}
+	
+	protected int
+	getFilesLinked()
+	{
+		return( files_linked.get());
+	}
+	
+	protected int
+	getFilesCopied()
+	{
+		return( files_copied.get());
+	}
+	
+	protected int
+	getFilesResumed()
+	{
+		return( files_resumed.get());
+	}
+	
+	protected int
+	getFilesStored()
+	{
+		return( files_stored.get());
+	}
+	
+	protected int
+	getFilesTotal()
+	{
+		return( files_total );
+	}
+	
+	private File
+	getTarget(
+		ZipEntry	entry )
+		
+		throws IOException
+	{
+		String	name = entry.getName();
+			
+			// guard against entries escaping the target folder
+		
+		if ( name.startsWith( "/" ) || ( "/" + name + "/" ).contains( "/../" )){
+			
+			throw( new IOException( "Invalid zip entry: " + name ));
+		}
+		
+		if ( File.separatorChar != '/' ){
+			
+			name = name.replace( '/', File.separatorChar );
+		}
+		
+		return( new File( target_dir, name ));
+	}
+	
+	private void
+	openJournal()
+		
+		throws IOException
+	{
+		File	journal_file = new File( target_dir, JOURNAL_NAME );
+		
+		String	header = getJournalHeader( zip_file );
+		
+		if ( canResume( target_dir, zip_file )){
+			
+			journalled = new BrowserManifest();
+			
+			LineNumberReader lnr = new LineNumberReader( new InputStreamReader( new FileInputStream( journal_file ), "UTF-8" ));
+			
+			try{
+				lnr.readLine();
+				
+				while( true ){
+					
+					String line = lnr.readLine();
+					
+					if ( line == null ){
+						
+						break;
+					}
+					
+						// blank and torn lines (from a crash) are skipped, anything written by a later
+						// resume follows them on lines of its own
+					
+					if ( line.length() > 0 ){
+						
+						journalled.parseEntry( line );
+					}
+				}
+			}finally{
+				
+				lnr.close();
+			}
+			
+			boolean	torn = !endsWithNewline( journal_file );
+			
+			journal = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( journal_file, true ), "UTF-8" ));
+			
+			if ( torn ){
+				
+				journal.write( "\n" );
+			}
+		
+		}else{
+			
+			journal = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( journal_file ), "UTF-8" ));
+			
+			journal.write( header + "\n" );
+		}
+		
+		journal.flush();
+	}
+	
+	private static boolean
+	endsWithNewline(
+		File		file )
+		
+		throws IOException
+	{
+		RandomAccessFile	raf = new RandomAccessFile( file, "r" );
+		
+		try{
+			long	len = raf.length();
+			
+			if ( len == 0 ){
+				
+				return( false );
+			}
+			
+			raf.seek( len - 1 );
+			
+			return( raf.read() == '\n' );
+			
+		}finally{
+			
+			raf.close();
+		}
+	}
+	
+	private synchronized void
+	addToJournal(
+		String					name,
+		BrowserManifest.Entry	entry )
+		
+		throws IOException
+	{
+		journal.write( BrowserManifest.formatEntry( name, entry ) + "\n" );
+		
+		journal.flush();
+	}
+	
+	private synchronized void
+	closeJournal()
+	{
+		if ( journal != null ){
+			
+			try{
+				journal.close();
+			
+			}catch( Throwable e ){
+			}
+			
+			journal = null;
+		}
+	}
+	
+	private void
+	extractEntry(
+		ZipFile		zip,
+		ZipEntry	entry,
+		byte[]		buffer )
+		
+		throws IOException
+	{
+		String	name	= entry.getName();
+		long	size	= entry.getSize();
+		long	crc		= entry.getCrc();
+		
+		File target_out = getTarget( entry );
+		
+		if ( journalled != null ){
+			
+			BrowserManifest.Entry done = journalled.get( name );
+			
+				// files aren't synced before being journalled so after a power loss one can have the
+				// right length and mtime but not the content, the CRC is checked before trusting it
+			
+			if ( 	done != null &&
+					done.size == size &&
+					done.crc == crc &&
+					target_out.length() == size &&
+					target_out.lastModified() == done.mtime &&
+					getCRC( target_out, buffer ) == crc ){
+				
+				files_resumed.incrementAndGet();
+				
+				manifest.add( name, size, crc, done.mtime, done.hash );
+				
+				return;
+			}
+				
+				// partial or damaged output from the interrupted run
+			
+			target_out.delete();
+		}
+		
+		String	hash = null;
+		
+		if ( reusePrevious( entry, target_out, buffer )){
+				
+				// the previous file is (possibly) already in the store, so is ours now
+			
+			if ( previous_manifest != null ){
+				
+				hash = previous_manifest.get( name ).hash;
+			}
+		}else{
+			
+			MessageDigest	digest;
+			
+			try{
+				digest = MessageDigest.getInstance( "SHA-1" );
+			
+			}catch( Throwable e ){
+				
+				throw( new IOException( e ));
+			}
+			
+			InputStream		entry_is 	= zip.getInputStream( entry );
+			OutputStream	entry_os	= null;
+			
+			CRC32	actual_crc 	= new CRC32();
+			long	actual_size	= 0;
+			
+			boolean	ok = false;
+			
+			try{
+				entry_os = new FileOutputStream( target_out );
+				
+				while( true ){
+					
+					checkCancelled();
+					
+					int	len = entry_is.read( buffer );
+					
+					if ( len <= 0 ){
+						
+						break;
+					}
+					
+					actual_crc.update( buffer, 0, len );
+					
+					digest.update( buffer, 0, len );
+					
+					actual_size += len;
+					
+					entry_os.write( buffer, 0, len );
+				}
+				
+				ok = true;
+			
+			}finally{
+				
+				try{
+					entry_is.close();
+				
+				}catch( Throwable e ){
+					
+					Debug.out( e );
+				}
+				
+				if ( entry_os != null ){
+					
+					try{
+						entry_os.close();
+					
+					}catch( IOException e ){
+						
+						ok = false;
+						
+						throw( e );
+					}
+				}
+				
+				if ( !ok ){
+					
+					target_out.delete();
+				}
+			}
+			
+			if (( size >= 0 && actual_size != size ) || ( crc >= 0 && actual_crc.getValue() != crc )){
+				
+				target_out.delete();
+				
+				throw( new ZipException( "CRC/size verification failed for " + name ));
+			}
+			
+			if ( store != null && !isProfileData( name )){
+				
+				String	digest_str = toHex( digest.digest());
+				
+				if ( store.add( target_out, actual_size, digest_str )){
+					
+					hash = digest_str;
+					
+					files_stored.incrementAndGet();
+				}
+			}
+		}
+		
+		if ( posix ){
+			
+			setPermissions( name, target_out );
+		}
+		
+		long	mtime = target_out.lastModified();
+		
+		manifest.add( name, size, crc, mtime, hash );
+		
+		addToJournal( name, manifest.get( name ));
+	}
+	
+	private static String
+	toHex(
+		byte[]		bytes )
+	{
+		char[]	chars = new char[bytes.length*2];
+		
+		for ( int i=0;i<bytes.length;i++ ){
+			
+			chars[i*2]		= Character.forDigit(( bytes[i] >> 4 ) & 0x0f, 16 );
+			chars[i*2+1]	= Character.forDigit( bytes[i] & 0x0f, 16 );
+		}
+		
+		return( new String( chars ));
+	}
+	
+	private void
+	setPermissions(
+		String		name,
+		File		target_out )
+		
+		throws IOException
+	{
+		Integer	mode = unix_modes.get( name );
+		
+		int		perms = mode==null?0:( mode & 0777 );
+		
+		if (( perms & 0111 ) != 0 ){
+			
+			perms |= 0600;
+		
+		}else if ( isExecutable( name )){
+				
+				// known launchers/libraries are always made executable in case the zip was built
+				// from a tree that lost the mode bits
+			
+			perms = 0755;
+		
+		}else{
+				
+				// files are created rw already, nothing to do
+			
+			return;
+		}
+		
+		Set<PosixFilePermission>	set = EnumSet.noneOf( PosixFilePermission.class );
+		
+		PosixFilePermission[]	values = { 
+			PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+			PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+			PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ,
+		};
+		
+		for ( int i=0;i<values.length;i++ ){
+			
+			if (( perms & ( 1 << i )) != 0 ){
+				
+				set.add( values[i] );
+			}
+		}
+		
+		Files.setPosixFilePermissions( target_out.toPath(), set );
+	}
+	
+	private static boolean
+	isExecutable(
+		String		name )
+	{
+		if ( name.contains( "/Contents/MacOS/" )){
+			
+			return( true );
+		}
+		
+		String	file_name = name.substring( name.lastIndexOf( '/' ) + 1 );
+		
+		for ( String s: EXECUTABLE_NAMES ){
+			
+			if ( file_name.equals( s )){
+				
+				return( true );
+			}
+		}
+		
+		for ( String s: EXECUTABLE_SUFFIXES ){
+			
+			if ( file_name.endsWith( s ) || file_name.contains( s + "." )){
+				
+				return( true );
+			}
+		}
+		
+		return( false );
+	}
+		
+		/**
+		 * java.util.zip doesn't expose the external attributes so pick up the unix mode bits
+		 * directly from the central directory. Zip64 archives aren't handled, in which case
+		 * the name based rules are used instead
+		 */
+	
+	private Map<String,Integer>
+	readUnixModes()
+	{
+		Map<String,Integer>	result = new HashMap<String,Integer>();
+		
+		try{
+			RandomAccessFile raf = new RandomAccessFile( zip_file, "r" );
+			
+			try{
+				long	file_len = raf.length();
+				
+				int		tail_len = (int)Math.min( file_len, 65535 + 22 );
+				
+				byte[]	tail = new byte[tail_len];
+				
+				raf.seek( file_len - tail_len );
+				
+				raf.readFully( tail );
+				
+				int	eocd = -1;
+				
+				for ( int i=tail_len-22;i>=0;i-- ){
+					
+					if ( getInt( tail, i ) == 0x06054b50 ){
+						
+						eocd = i;
+						
+						break;
+					}
+				}
+				
+				if ( eocd == -1 ){
+					
+					return( result );
+				}
+				
+				long	cd_size 	= getInt( tail, eocd + 12 ) & 0xffffffffL;
+				long	cd_offset	= getInt( tail, eocd + 16 ) & 0xffffffffL;
+				
+				if ( cd_offset == 0xffffffffL || cd_size > Integer.MAX_VALUE || cd_offset + cd_size > file_len ){
+					
+					return( result );
+				}
+				
+				byte[]	cd = new byte[(int)cd_size];
+				
+				raf.seek( cd_offset );
+				
+				raf.readFully( cd );
+				
+				int	pos = 0;
+				
+				while( pos + 46 <= cd.length && getInt( cd, pos ) == 0x02014b50 ){
+					
+					int	made_by		= getShort( cd, pos + 4 );
+					int	name_len	= getShort( cd, pos + 28 );
+					int	extra_len	= getShort( cd, pos + 30 );
+					int	comment_len	= getShort( cd, pos + 32 );
+					int	ext_attr	= getInt( cd, pos + 38 );
+					
+					if ( pos + 46 + name_len > cd.length ){
+						
+						break;
+					}
+					
+					if (( made_by >> 8 ) == UNIX_HOST ){
+						
+						int mode = ( ext_attr >>> 16 ) & 0xffff;
+						
+						if ( mode != 0 ){
+							
+							String name = new String( cd, pos + 46, name_len, StandardCharsets.UTF_8 );
+							
+							result.put( name, mode );
+						}
+					}
+					
+					pos += 46 + name_len + extra_len + comment_len;
+				}
+			}finally{
+				
+				raf.close();
+			}
+		}catch( Throwable e ){
+			
+			Debug.out( e );
+		}
+		
+		return( result );
+	}
+	
+	private static int
+	getShort(
+		byte[]		b,
+		int			pos )
+	{
+		return(( b[pos] & 0xff ) | (( b[pos+1] & 0xff ) << 8 ));
+	}
+	
+	private static int
+	getInt(
+		byte[]		b,
+		int			pos )
+	{
+		return( getShort( b, pos ) | ( getShort( b, pos + 2 ) << 16 ));
+	}
+	
+	private boolean
+	reusePrevious(
+		ZipEntry	entry,
+		File		target_out,
+		byte[]		buffer )
+	{
+		if ( previous_dir == null ){
+			
+			return( false );
+		}
+		
+		String	name = entry.getName();
+		
+		long	size	= entry.getSize();
+		long	crc		= entry.getCrc();
+			
+			// never share profile data as the browser updates it in place
+		
+		if ( size < 0 || crc < 0 || isProfileData( name )){
+			
+			return( false );
+		}
+		
+		File	old_file = new File( previous_dir, target_out.getAbsolutePath().substring( target_dir.getAbsolutePath().length() + 1 ));
+		
+		if ( old_file.length() != size || !old_file.isFile()){
+			
+			return( false );
+		}
+		
+		if ( previous_manifest != null ){
+			
+			BrowserManifest.Entry old_entry = previous_manifest.get( name );
+				
+				// mtime check catches files modified since they were extracted
+			
+			if ( 	old_entry == null ||
+					old_entry.size != size ||
+					old_entry.crc != crc ||
+					old_entry.mtime != old_file.lastModified()){
+				
+				return( false );
+			}
+		}else{
+				
+				// no manifest (install predates them), reading is still cheaper than inflating and writing
+			
+			if ( getCRC( old_file, buffer ) != crc ){
+				
+				return( false );
+			}
+		}
+		
+		try{
+			Files.createLink( target_out.toPath(), old_file.toPath());
+			
+			files_linked.incrementAndGet();
+			
+			return( true );
+		
+		}catch( Throwable e ){
+		}
+		
+		try{
+			Files.copy( old_file.toPath(), target_out.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES );
+			
+			files_copied.incrementAndGet();
+			
+			return( true );
+		
+		}catch( Throwable e ){
+			
+			target_out.delete();
+			
+			return( false );
+		}
+	}
+	
+	private static boolean
+	isProfileData(
+		String		name )
+	{
+			// pre 4.0 'Data/...', after that '[Browser|TorBrowser.app]/TorBrowser/Data/...'
+		
+		return( name.startsWith( "Data/" ) || name.contains( "/TorBrowser/Data/" ));
+	}
+	
+	private static long
+	getCRC(
+		File		file,
+		byte[]		buffer )
+	{
+		CRC32	crc = new CRC32();
+		
+		try{
+			InputStream is = new FileInputStream( file );
+			
+			try{
+				while( true ){
+					
+					int	len = is.read( buffer );
+					
+					if ( len <= 0 ){
+						
+						break;
+					}
+					
+					crc.update( buffer, 0, len );
+				}
+			}finally{
+				
+				is.close();
+			}
+			
+			return( crc.getValue());
+		
+		}catch( Throwable e ){
+			
+			return( -1 );
+		}
+	}
+}
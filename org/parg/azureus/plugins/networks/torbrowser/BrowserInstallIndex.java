@@ -0,0 +1,246 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.util.Properties;
+	
+	/**
+	 * Persisted summary of the last completed install so that a normal start can validate it
+	 * with a handful of file stats rather than rescanning the install and data directories.
+	 * Any disagreement with the file system causes the caller to fall back to a full scan
+	 */
+
+public class
+BrowserInstallIndex
+{
+	public static final String	FILE_NAME	= "install.idx";
+	
+	private static final String	STATUS_EXTRACTING	= "extracting";
+	private static final String	STATUS_COMPLETE		= "complete";
+	
+	private String		version;
+	private String		zip_name;
+	private long		zip_size;
+	private long		zip_mtime;
+	private long		install_dir_mtime;
+	private String		status;
+	
+	protected static BrowserInstallIndex
+	read(
+		File		data_dir )
+	{
+		File	file = new File( data_dir, FILE_NAME );
+		
+		if ( !file.exists()){
+			
+			return( null );
+		}
+		
+		try{
+			Properties	props = new Properties();
+			
+			InputStream is = new FileInputStream( file );
+			
+			try{
+				props.load( is );
+			
+			}finally{
+				
+				is.close();
+			}
+			
+			BrowserInstallIndex	result = new BrowserInstallIndex();
+			
+			result.version				= props.getProperty( "version" );
+			result.zip_name				= props.getProperty( "zip.name" );
+			result.zip_size				= Long.parseLong( props.getProperty( "zip.size" ));
+			result.zip_mtime			= Long.parseLong( props.getProperty( "zip.mtime" ));
+			result.install_dir_mtime	= Long.parseLong( props.getProperty( "install_dir.mtime" ));
+			result.status				= props.getProperty( "status" );
+			
+			if ( result.version == null || result.zip_name == null ){
+				
+				return( null );
+			}
+			
+			return( result );
+		
+		}catch( Throwable e ){
+			
+			return( null );
+		}
+	}
+	
+	protected static void
+	write(
+		File		data_dir,
+		File		install_dir,
+		String		version,
+		File		zip_file,
+		boolean		complete )
+		
+		throws IOException
+	{
+		File	file = new File( data_dir, FILE_NAME );
+			
+			// written in place rather than via a rename: the file is small and a damaged one just
+			// causes a rescan. It also means that rewriting doesn't change the data directory's mtime
+			// which matters in the case where this is the same as the install directory
+		
+		for ( int i=0;i<2;i++ ){
+			
+			long	dir_mtime = install_dir.lastModified();
+			
+			BrowserInstallIndex	index = new BrowserInstallIndex();
+			
+			index.version			= version;
+			index.zip_name			= zip_file.getName();
+			index.zip_size			= zip_file.length();
+			index.zip_mtime			= zip_file.lastModified();
+			index.install_dir_mtime	= dir_mtime;
+			index.status			= complete?STATUS_COMPLETE:STATUS_EXTRACTING;
+			
+			index.store( file );
+			
+			if ( install_dir.lastModified() == dir_mtime ){
+				
+				break;
+			}
+		}
+	}
+		
+		/**
+		 * Brings the recorded install directory mtime up to date after we have made changes to the
+		 * directory ourselves, provided that the index was consistent before they were made
+		 */
+	
+	protected static void
+	updateInstallDirTime(
+		File		data_dir,
+		File		install_dir,
+		long		old_mtime )
+	{
+		long	new_mtime = install_dir.lastModified();
+		
+		if ( new_mtime == old_mtime ){
+			
+			return;
+		}
+		
+		BrowserInstallIndex index = read( data_dir );
+		
+		if ( 	index != null &&
+				STATUS_COMPLETE.equals( index.status ) &&
+				index.install_dir_mtime == old_mtime ){
+			
+			try{
+				index.install_dir_mtime = new_mtime;
+				
+				index.store( new File( data_dir, FILE_NAME ));
+			
+			}catch( Throwable e ){
+				
+				delete( data_dir );
+			}
+		}
+	}
+	
+	private void
+	store(
+		File		file )
+		
+		throws IOException
+	{
+		Properties	props = new Properties();
+		
+		props.setProperty( "version", 			version );
+		props.setProperty( "zip.name", 			zip_name );
+		props.setProperty( "zip.size", 			String.valueOf( zip_size ));
+		props.setProperty( "zip.mtime", 		String.valueOf( zip_mtime ));
+		props.setProperty( "install_dir.mtime", String.valueOf( install_dir_mtime ));
+		props.setProperty( "status", 			status );
+		
+		OutputStream os = new FileOutputStream( file );
+		
+		try{
+			props.store( os, "Tor Browser install index" );
+		
+		}finally{
+			
+			os.close();
+		}
+	}
+	
+	protected static void
+	delete(
+		File		data_dir )
+	{
+		new File( data_dir, FILE_NAME ).delete();
+	}
+		
+		/**
+		 * @return the installed browser_<ver> directory if the index still agrees with the file
+		 * system, null otherwise
+		 */
+	
+	protected File
+	validate(
+		File		install_dir,
+		File		data_dir )
+	{
+		if ( !STATUS_COMPLETE.equals( status )){
+			
+			return( null );
+		}
+			
+			// any plugin update or added/removed zip changes the directory's mtime
+		
+		if ( install_dir.lastModified() != install_dir_mtime ){
+			
+			return( null );
+		}
+		
+		File	zip_file = new File( install_dir, zip_name );
+		
+		if ( zip_file.length() != zip_size || zip_file.lastModified() != zip_mtime ){
+			
+			return( null );
+		}
+		
+		File	browser_dir = new File( data_dir, "browser_" + version );
+		
+		if ( !browser_dir.isDirectory()){
+			
+			return( null );
+		}
+		
+		return( browser_dir );
+	}
+	
+	protected String
+	getVersion()
+	{
+		return( version );
+	}
+}
@@ -0,0 +1,551 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.biglybt.core.util.AEThread2;
+import com.biglybt.core.util.Constants;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.FileUtil;
+import com.biglybt.core.util.SimpleTimer;
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.core.util.TimerEvent;
+import com.biglybt.core.util.TimerEventPerformer;
+import com.biglybt.core.util.TimerEventPeriodic;
+	
+	/**
+	 * Installs the highest available browser-<ver>.zip into the plugin data directory on a background
+	 * thread. Progress is reported via the listener and completion via the readiness future
+	 */
+
+public class
+BrowserInstaller
+{
+	public static final int	ST_IDLE			= 0;
+	public static final int	ST_SCANNING		= 1;
+	public static final int	ST_EXTRACTING	= 2;
+	public static final int	ST_MIGRATING	= 3;
+	public static final int	ST_READY		= 4;
+	public static final int	ST_FAILED		= 5;
+	
+	private static final String[] STATE_NAMES = { "idle", "scanning", "extracting", "migrating", "ready", "failed" };
+	
+	private final TorBrowserPlugin	plugin;
+	private final File				plugin_install_dir;
+	private final File				plugin_data_dir;
+	private final Listener			listener;
+	
+	private final CompletableFuture<File>	readiness = new CompletableFuture<File>();
+	
+	private volatile int		state		= ST_IDLE;
+	private volatile int		progress;
+	private volatile boolean	cancelled;
+	private volatile boolean	cleanup_required;
+	private volatile boolean	extracted;
+	
+	private volatile BrowserExtractor	active_extractor;
+	private volatile ProfileMigrator	active_migrator;
+
+	protected
+	BrowserInstaller(
+		TorBrowserPlugin	_plugin,
+		File				_plugin_install_dir,
+		File				_plugin_data_dir,
+		Listener			_listener )
+	{
+		plugin				= _plugin;
+		plugin_install_dir	= _plugin_install_dir;
+		plugin_data_dir		= _plugin_data_dir;
+		listener			= _listener;
+	}
+	
+	protected void
+	start()
+	{
+		new AEThread2( "TorBrowser:installer" )
+		{
+			@Override
+			public void
+			run()
+			{
+				try{
+					long	start = SystemTime.getMonotonousTime();
+					
+					File result = install();
+					
+					plugin.log( "Browser installed at " + result + " (" + ( SystemTime.getMonotonousTime() - start ) + "ms)" );
+					
+					setState( ST_READY, 100 );
+					
+					readiness.complete( result );
+				
+				}catch( Throwable e ){
+					
+					setState( ST_FAILED, 0 );
+					
+					readiness.completeExceptionally( e );
+				}
+			}
+		}.start();
+	}
+	
+	protected void
+	cancel()
+	{
+		cancelled = true;
+		
+			// stop any extraction or migration in progress rather than waiting for it to finish
+		
+		BrowserExtractor	extractor = active_extractor;
+		
+		if ( extractor != null ){
+			
+			extractor.cancel();
+		}
+		
+		ProfileMigrator	migrator = active_migrator;
+		
+		if ( migrator != null ){
+			
+			migrator.cancel();
+		}
+	}
+	
+	protected CompletableFuture<File>
+	getReadiness()
+	{
+		return( readiness );
+	}
+		
+		/**
+		 * Blocks until the install completes or fails
+		 * @param timeout	millis
+		 * @return the browser root directory
+		 */
+	
+	protected File
+	waitForInstall(
+		long		timeout )
+		
+		throws Exception
+	{
+		try{
+			return( readiness.get( timeout, TimeUnit.MILLISECONDS ));
+		
+		}catch( ExecutionException e ){
+			
+			Throwable cause = e.getCause();
+			
+			throw( new Exception( "Browser installation failed: " + Debug.getNestedExceptionMessage( cause==null?e:cause ), cause ));
+		
+		}catch( TimeoutException e ){
+			
+			throw( new Exception( "Timeout waiting for browser installation (" + getStateName( state ) + ", " + progress + "%)" ));
+		}
+	}
+	
+	protected File
+	getInstallDir()
+	{
+		return( plugin_install_dir );
+	}
+	
+	protected File
+	getDataDir()
+	{
+		return( plugin_data_dir );
+	}
+	
+		/**
+		 * @return true if the install had to rescan the plugin directories, in which case
+		 * there may be old versions to remove
+		 */
+	
+	protected boolean
+	isCleanupRequired()
+	{
+		return( cleanup_required );
+	}
+	
+		/**
+		 * @return true if this run extracted a new browser version, as opposed to picking up
+		 * an existing one
+		 */
+	
+	protected boolean
+	isNewVersion()
+	{
+		return( extracted );
+	}
+	
+	protected int
+	getState()
+	{
+		return( state );
+	}
+	
+	protected int
+	getProgress()
+	{
+		return( progress );
+	}
+	
+	protected static String
+	getStateName(
+		int		state )
+	{
+		return( STATE_NAMES[state] );
+	}
+	
+	private void
+	setState(
+		int		_state,
+		int		_progress )
+	{
+		boolean changed = state != _state || progress != _progress;
+		
+		state		= _state;
+		progress	= _progress;
+		
+		if ( changed ){
+			
+			try{
+				listener.stateChanged( this, _state, _progress );
+			
+			}catch( Throwable e ){
+				
+				Debug.out( e );
+			}
+		}
+	}
+	
+	private void
+	checkCancelled()
+		
+		throws Exception
+	{
+		if ( cancelled ){
+			
+			throw( new Exception( "Installation cancelled" ));
+		}
+	}
+	
+	private File
+	install()
+		
+		throws Exception
+	{
+		File	result;
+		
+		setState( ST_SCANNING, 0 );
+		
+		if ( !plugin_data_dir.exists()){
+			
+			plugin_data_dir.mkdirs();
+		}
+			
+			// normal case - nothing has changed since the last start
+		
+		BrowserInstallIndex index = BrowserInstallIndex.read( plugin_data_dir );
+		
+		if ( index != null ){
+			
+			File existing = index.validate( plugin_install_dir, plugin_data_dir );
+			
+			if ( existing != null ){
+				
+				plugin.logDebug( "Install index is current for version " + index.getVersion());
+				
+				return( existing );
+			}
+			
+			plugin.log( "Install index is out of date, rescanning" );
+		}
+		
+		cleanup_required = true;
+		
+		File[]	install_files = plugin_install_dir.listFiles();
+		
+		List<File>	old_zip_files = new ArrayList<File>();
+		
+		String 	highest_version_zip			= "0";
+		File	highest_version_zip_file	= null;
+		
+		for ( File file: install_files ){
+			
+			String name = file.getName();
+			
+			if ( file.isFile() && name.startsWith( "browser-" ) && name.endsWith( ".zip" )){
+				
+				String version = name.substring( name.lastIndexOf( "-" ) + 1, name.length() - 4 );
+				
+				if ( Constants.compareVersions( version, highest_version_zip ) > 0 ){
+					
+					highest_version_zip = version;
+					
+					if ( highest_version_zip_file != null ){
+						
+						old_zip_files.add( highest_version_zip_file );
+					}
+					
+					highest_version_zip_file = file;
+				}
+			}
+		}
+		
+		File[]	data_files = plugin_data_dir.listFiles();
+		
+		String 	highest_version_data		= "0";
+		File	highest_version_data_file 	= null;
+		
+		for ( File file: data_files ){
+			
+			String name = file.getName();
+			
+			if ( file.isDirectory() && name.startsWith( "browser_" )){
+				
+				String version = name.substring( 8 );
+				
+				if ( Constants.compareVersions( version, highest_version_data ) > 0 ){
+					
+					highest_version_data = version;
+					
+					highest_version_data_file = file;
+				}
+			}
+		}
+		
+		checkCancelled();
+		
+		if ( Constants.compareVersions( highest_version_zip, highest_version_data ) > 0 ){
+			
+			setState( ST_EXTRACTING, 0 );
+			
+			BrowserInstallIndex.write( plugin_data_dir, plugin_install_dir, highest_version_zip, highest_version_zip_file, false );
+			
+			File temp_data = new File( plugin_data_dir, "tmp_" + highest_version_zip );
+			
+			if ( temp_data.exists()){
+				
+				if ( BrowserExtractor.canResume( temp_data, highest_version_zip_file )){
+					
+					plugin.log( "Resuming interrupted extraction into " + temp_data );
+					
+				}else if ( !FileUtil.recursiveDeleteNoCheck( temp_data )){
+					
+					throw( new Exception( "Failed to remove tmp directory: " + temp_data ));
+				}
+			}
+			
+			long	extract_start = SystemTime.getMonotonousTime();
+			
+			final BrowserExtractor extractor = new BrowserExtractor( highest_version_zip_file, temp_data );
+			
+			extractor.setStore( new BrowserStore( plugin_data_dir ));
+
+				// unchanged files can be picked up from the current install rather than re-inflated
+			
+			if ( highest_version_data_file != null ){
+				
+				extractor.setPreviousInstall( highest_version_data_file, BrowserManifest.read( highest_version_data_file ));
+			}
+			
+			TimerEventPeriodic progress_timer = 
+				SimpleTimer.addPeriodicEvent(
+					"TorBrowser:installProgress",
+					250,
+					new TimerEventPerformer()
+					{
+						@Override
+						public void
+						perform(
+							TimerEvent event )
+						{
+							int	total = extractor.getFilesTotal();
+							
+							if ( total > 0 ){
+								
+								setState( ST_EXTRACTING, ( extractor.getFilesDone() * 100 ) / total );
+							}
+						}
+					});
+			
+			active_extractor = extractor;
+			
+			try{
+				if ( cancelled ){
+					
+					extractor.cancel();
+				}
+				
+				extractor.extract();
+			
+			}finally{
+				
+				active_extractor = null;
+				
+				progress_timer.cancel();
+			}
+			
+			checkCancelled();
+			
+			plugin.log( 
+				"Extracted " + extractor.getFilesTotal() + " files from " + highest_version_zip_file.getName() + 
+				" (" + extractor.getFilesLinked() + " linked, " + extractor.getFilesCopied() + " copied from previous version, " + 
+				extractor.getFilesResumed() + " resumed, " + extractor.getFilesStored() + " added to store) in " + 
+				( SystemTime.getMonotonousTime() - extract_start ) + "ms" );
+				
+				// migrate any existing profile data
+			
+			setState( ST_MIGRATING, 0 );
+			
+			if ( highest_version_data_file != null ){
+				
+				char slash = File.separatorChar;
+				
+				// Version 4.0 - Data moved from /Data to [Browser|TorBrowser.app]/TorBrowser/Data
+				// Windows and Linux use 'Browser'
+				
+				String	top_level_folder = Constants.isOSX?"TorBrowser.app":"Browser";
+				
+				File	old_profile = new File( highest_version_data_file, "Data" );
+				
+				if ( !old_profile.exists()){
+					
+					old_profile = new File( highest_version_data_file, top_level_folder + slash + "TorBrowser" + slash + "Data" );
+				}
+				
+				File	new_profile = new File( temp_data, "Data" );
+				
+				if ( !new_profile.exists()){
+					
+					new_profile = new File( temp_data, top_level_folder + slash + "TorBrowser" + slash + "Data" );
+				}
+				
+				final ProfileMigrator migrator = new ProfileMigrator( plugin, plugin.getMigrationExcludes(), plugin.getMigrationIncludes());
+				
+				TimerEventPeriodic migrate_timer = 
+					SimpleTimer.addPeriodicEvent(
+						"TorBrowser:migrateProgress",
+						250,
+						new TimerEventPerformer()
+						{
+							@Override
+							public void
+							perform(
+								TimerEvent event )
+							{
+								int	total = migrator.getFilesTotal();
+								
+								if ( total > 0 ){
+									
+									setState( ST_MIGRATING, ( migrator.getFilesDone() * 100 ) / total );
+								}
+							}
+						});
+				
+				active_migrator = migrator;
+				
+				try{
+					if ( cancelled ){
+						
+						migrator.cancel();
+					}
+					
+					migrator.migrate( old_profile, new_profile );
+				
+				}finally{
+					
+					active_migrator = null;
+					
+					migrate_timer.cancel();
+				}
+			}
+			
+			checkCancelled();
+			
+			File target_data = new File( plugin_data_dir, "browser_" + highest_version_zip );
+			
+			if ( target_data.exists()){
+				
+				throw( new Exception( "Target already exists: " + target_data ));
+			}
+			
+			if ( !temp_data.renameTo( target_data )){
+				
+				throw( new Exception( "Failed to rename " + temp_data + " to " + target_data ));
+			}
+			
+			for ( File old: old_zip_files ){
+				
+				old.delete();
+			}
+			
+			result = target_data;
+			
+			extracted = true;
+			
+			BrowserInstallIndex.write( plugin_data_dir, plugin_install_dir, highest_version_zip, highest_version_zip_file, true );
+		
+		}else{
+			
+			File existing_data = new File( plugin_data_dir, "browser_" + highest_version_data );
+			
+			if ( highest_version_data.equals( "0" ) || !existing_data.exists()){
+				
+				throw( new Exception( "No browser version installed" ));
+			}
+			
+			result = existing_data;
+				
+				// index missing or stale, rebuild it
+			
+			if ( highest_version_zip_file != null && Constants.compareVersions( highest_version_zip, highest_version_data ) == 0 ){
+				
+				BrowserInstallIndex.write( plugin_data_dir, plugin_install_dir, highest_version_data, highest_version_zip_file, true );
+			
+			}else{
+				
+				BrowserInstallIndex.delete( plugin_data_dir );
+			}
+		}
+		
+		return( result );
+	}
+	
+	protected interface
+	Listener
+	{
+		public void
+		stateChanged(
+			BrowserInstaller	installer,
+			int					state,
+			int					progress );
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+	
+	/**
+	 * Records the zip entries that make up an extracted browser_<ver> install along with their
+	 * size, CRC32, the modification time of the file as written and, where known, the content
+	 * hash under which the file is held in the shared store. This lets a later upgrade tell which
+	 * files are unchanged
+	 */
+
+public class
+BrowserManifest
+{
+	public static final String	FILE_NAME	= ".manifest";
+	
+	private static final String	HEADER_V1	= "# tor browser manifest v1";
+	private static final String	HEADER		= "# tor browser manifest v2";
+	
+	private final Map<String,Entry>	entries = new ConcurrentHashMap<String,Entry>();
+	
+	protected static BrowserManifest
+	read(
+		File		dir )
+	{
+		File	file = new File( dir, FILE_NAME );
+		
+		if ( !file.exists()){
+			
+			return( null );
+		}
+		
+		BrowserManifest result = new BrowserManifest();
+		
+		LineNumberReader	lnr = null;
+		
+		try{
+			lnr = new LineNumberReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ));
+			
+			String header = lnr.readLine();
+			
+			boolean	v1 = header != null && header.equals( HEADER_V1 );
+			
+			if ( header == null || !( v1 || header.equals( HEADER ))){
+				
+				return( null );
+			}
+			
+			while( true ){
+				
+				String line = lnr.readLine();
+				
+				if ( line == null ){
+					
+					break;
+				}
+				
+				if ( v1 ){
+					
+					String[] bits = line.split( "\t", 4 );
+					
+					result.add( bits[3], Long.parseLong( bits[0] ), Long.parseLong( bits[1], 16 ), Long.parseLong( bits[2] ), null );
+				
+				}else if ( !result.parseEntry( line )){
+					
+					return( null );
+				}
+			}
+			
+			return( result );
+		
+		}catch( Throwable e ){
+				
+				// treat a damaged manifest as missing, it is only an optimisation
+			
+			return( null );
+		
+		}finally{
+			
+			if ( lnr != null ){
+				
+				try{
+					lnr.close();
+				
+				}catch( Throwable e ){
+				}
+			}
+		}
+	}
+	
+	protected void
+	write(
+		File		dir )
+		
+		throws IOException
+	{
+		File	file = new File( dir, FILE_NAME );
+		
+		List<String>	names = new ArrayList<String>( entries.keySet());
+		
+		Collections.sort( names );
+		
+		PrintWriter writer = new PrintWriter( new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" )));
+		
+		try{
+			writer.println( HEADER );
+			
+			for ( String name: names ){
+				
+				writer.println( formatEntry( name, entries.get( name )));
+			}
+		}finally{
+			
+			writer.close();
+		}
+		
+		if ( writer.checkError()){
+			
+			throw( new IOException( "Failed to write " + file ));
+		}
+	}
+	
+	protected void
+	add(
+		String		name,
+		long		size,
+		long		crc,
+		long		mtime,
+		String		hash )
+	{
+		entries.put( name, new Entry( size, crc, mtime, hash ));
+	}
+		
+		/**
+		 * Format shared with the extraction journal
+		 */
+	
+	protected static String
+	formatEntry(
+		String		name,
+		Entry		entry )
+	{
+		return( entry.size + "\t" + Long.toHexString( entry.crc ) + "\t" + entry.mtime + "\t" + ( entry.hash==null?"-":entry.hash ) + "\t" + name );
+	}
+		
+		/**
+		 * @return false if the line is malformed
+		 */
+	
+	protected boolean
+	parseEntry(
+		String		line )
+	{
+		String[] bits = line.split( "\t", 5 );
+		
+		if ( bits.length != 5 ){
+			
+			return( false );
+		}
+		
+		try{
+			add( bits[4], Long.parseLong( bits[0] ), Long.parseLong( bits[1], 16 ), Long.parseLong( bits[2] ), bits[3].equals( "-" )?null:bits[3] );
+			
+			return( true );
+		
+		}catch( Throwable e ){
+			
+			return( false );
+		}
+	}
+	
+	protected Set<String>
+	getHashes()
+	{
+		Set<String>	result = new HashSet<String>();
+		
+		for ( Entry entry: entries.values()){
+			
+			if ( entry.hash != null ){
+				
+				result.add( entry.hash );
+			}
+		}
+		
+		return( result );
+	}
+	
+	protected Entry
+	get(
+		String		name )
+	{
+		return( entries.get( name ));
+	}
+	
+	protected int
+	size()
+	{
+		return( entries.size());
+	}
+	
+	protected static class
+	Entry
+	{
+		protected final long	size;
+		protected final long	crc;
+		protected final long	mtime;
+		protected final String	hash;
+		
+		protected
+		Entry(
+			long		_size,
+			long		_crc,
+			long		_mtime,
+			String		_hash )
+		{
+			size	= _size;
+			crc		= _crc;
+			mtime	= _mtime;
+			hash	= _hash;
+		}
+	}
+}
@@ -0,0 +1,474 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+	
+	/**
+	 * Reconciles the browser's pref files with the values we require. The parsed state of each
+	 * file is remembered along with its size, mtime and content hash so that a launch where
+	 * nothing has changed costs a couple of file stats rather than a read and parse. External
+	 * edits (Firefox rewrites prefs.js on exit) change the size/mtime and trigger a re-read,
+	 * if the content turns out to be the same the previous parse is reused
+	 */
+
+public class
+BrowserPrefs
+{
+		// file systems such as FAT only record mtimes to 2 seconds so a file written within this
+		// window of us looking at it could change again without its mtime moving
+	
+	private static final int	MTIME_GRANULARITY	= 2000;
+	
+	private static final String	OVERLAY_HEADER	= "// Managed by the Tor Browser plugin, changes will be overwritten";
+	
+	private final TorBrowserPlugin		plugin;
+	
+	private final Map<File,FileState>	states = new HashMap<File,FileState>();
+	
+	protected
+	BrowserPrefs(
+		TorBrowserPlugin		_plugin )
+	{
+		plugin	= _plugin;
+	}
+	
+	protected synchronized void
+	fixPrefs(
+		File				file,
+		String				pref_key,
+		Map<String,Object>	prefs,
+		Set<String>			optional_keys )
+		
+		throws Exception
+	{
+		FileState	state = states.get( file );
+		
+		if ( state != null ){
+			
+			if ( state.isCurrent( file ) && state.satisfies( prefs, optional_keys )){
+				
+				return;
+			}
+		}
+		
+		states.remove( file );
+		
+		String				text	= null;
+		List<PrefsParser.Pref>	parsed	= null;
+		
+		if ( file.exists()){
+			
+			long	observed 	= System.currentTimeMillis();
+			long	size		= file.length();
+			long	mtime		= file.lastModified();
+			
+			byte[]	content = readFile( file );
+			
+			byte[]	hash = getHash( content );
+			
+			text = new String( content, "UTF-8" );
+			
+			if ( state != null && Arrays.equals( hash, state.hash )){
+					
+					// touched but not modified, just bring the stat up to date
+				
+				state.setStat( size, mtime, observed );
+			
+			}else{
+				
+				parsed = PrefsParser.parse( text );
+				
+				state = new FileState( size, mtime, observed, hash, PrefsParser.getValues( parsed, pref_key ));
+			}
+			
+			if ( state.satisfies( prefs, optional_keys )){
+				
+				states.put( file, state );
+				
+				return;
+			}
+			
+			if ( parsed == null ){
+				
+				parsed = PrefsParser.parse( text );
+			}
+		}
+		
+		plugin.logDebug( "Updating " + file );
+		
+		File temp_file 	= new File( file.getAbsolutePath() + ".tmp" );
+		File bak_file 	= new File( file.getAbsolutePath() + ".bak" );
+		
+		temp_file.delete();
+		
+		Map<String,String>	values = new HashMap<String,String>();
+		
+		if ( state != null && text != null ){
+			
+			values.putAll( state.values );
+		}
+		
+		MessageDigest	digest = MessageDigest.getInstance( "SHA-1" );
+		
+		try{
+				// the original text is copied through as is, only the values of the statements we own are replaced
+			
+			Writer writer = new BufferedWriter( new OutputStreamWriter( new DigestOutputStream( new FileOutputStream( temp_file ), digest ), "UTF-8" ), 65536 );
+			
+			try{
+				Set<String>	seen = new HashSet<String>();
+				
+				int	last_pos = 0;
+				
+				if ( parsed != null ){
+					
+					for ( PrefsParser.Pref pref: parsed ){
+						
+						Object	required_value = prefs.get( pref.key );
+						
+						if ( required_value == null || !pref.func.equals( pref_key )){
+							
+							continue;
+						}
+						
+						seen.add( pref.key );
+						
+						writer.write( text, last_pos, pref.value_start - last_pos );
+						
+						writer.write( PrefsParser.formatValue( required_value ));
+						
+						last_pos = pref.value_end;
+					}
+					
+					writer.write( text, last_pos, text.length() - last_pos );
+				}
+				
+				String	line_sep = System.getProperty( "line.separator" );
+				
+				if ( text != null && text.length() > 0 && !text.endsWith( "\n" )){
+					
+					writer.write( line_sep );
+				}
+				
+				for ( Map.Entry<String, Object> entry: new TreeMap<String,Object>( prefs ).entrySet()){
+					
+					String key = entry.getKey();
+					
+					if ( !seen.contains( key )){
+						
+						writer.write( PrefsParser.formatPref( pref_key, key, entry.getValue()));
+						
+						writer.write( line_sep );
+					}
+				}
+			}finally{
+				
+				writer.close();
+			}
+			
+			bak_file.delete();
+			
+			if ( file.exists()){
+				
+				if ( !file.renameTo( bak_file )){
+					
+					throw( new Exception( "Rename of " + file + " to " + bak_file + " failed" ));
+				}
+			}
+			
+			if ( !temp_file.renameTo( file )){
+				
+				if ( bak_file.exists()){
+					
+					bak_file.renameTo( file );
+				}
+				
+				throw( new Exception( "Rename of " + temp_file + " to " + file + " failed" ));
+			}
+		}catch( Throwable e ){
+			
+			temp_file.delete();
+			
+			throw( new Exception( "Failed to udpate " + file, e ));
+		}
+			
+			// record what we wrote so the next launch can skip the file entirely
+		
+		for ( Map.Entry<String, Object> entry: prefs.entrySet()){
+			
+			values.put( entry.getKey(), PrefsParser.formatValue( entry.getValue()));
+		}
+		
+		states.put( file, new FileState( file.length(), file.lastModified(), System.currentTimeMillis(), digest.digest(), values ));
+	}
+		
+		/**
+		 * Writes the prefs as an overlay file (user.js) that the browser applies over prefs.js at startup.
+		 * The file only holds our prefs so it is tiny and only written when they change. A user.js that
+		 * isn't ours has our prefs merged into it instead
+		 */
+	
+	protected synchronized void
+	writeOverlay(
+		File				file,
+		String				pref_key,
+		Map<String,Object>	prefs )
+		
+		throws Exception
+	{
+		if ( file.exists() && !isOverlay( file )){
+			
+			fixPrefs( file, pref_key, prefs, new HashSet<String>());
+			
+			return;
+		}
+		
+		String	line_sep = System.getProperty( "line.separator" );
+		
+		StringBuilder	sb = new StringBuilder( 1024 );
+		
+		sb.append( OVERLAY_HEADER ).append( line_sep );
+		
+		Map<String,String>	values = new HashMap<String,String>();
+		
+		for ( Map.Entry<String,Object> entry: new TreeMap<String,Object>( prefs ).entrySet()){
+			
+			sb.append( PrefsParser.formatPref( pref_key, entry.getKey(), entry.getValue())).append( line_sep );
+			
+			values.put( entry.getKey(), PrefsParser.formatValue( entry.getValue()));
+		}
+		
+		byte[]	content = sb.toString().getBytes( "UTF-8" );
+		
+		byte[]	hash = getHash( content );
+		
+		FileState	state = states.get( file );
+		
+		if ( state != null && state.isCurrent( file ) && Arrays.equals( hash, state.hash )){
+			
+			return;
+		}
+		
+		long	observed = System.currentTimeMillis();
+		
+		if ( file.length() == content.length && Arrays.equals( hash, getHash( readFile( file )))){
+			
+			states.put( file, new FileState( content.length, file.lastModified(), observed, hash, values ));
+			
+			return;
+		}
+		
+		plugin.logDebug( "Updating " + file );
+		
+		File temp_file 	= new File( file.getAbsolutePath() + ".tmp" );
+		
+		try{
+			OutputStream os = new FileOutputStream( temp_file );
+			
+			try{
+				os.write( content );
+			
+			}finally{
+				
+				os.close();
+			}
+			
+			Files.move( temp_file.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+		
+		}catch( Throwable e ){
+			
+			temp_file.delete();
+			
+			throw( new Exception( "Failed to udpate " + file, e ));
+		}
+		
+		states.put( file, new FileState( content.length, file.lastModified(), System.currentTimeMillis(), hash, values ));
+	}
+		
+		/**
+		 * Removes an overlay written by us, e.g. when overlay mode is turned off, as it would otherwise
+		 * keep overriding the prefs.js values
+		 */
+	
+	protected synchronized void
+	removeOverlay(
+		File		file )
+	{
+		states.remove( file );
+		
+		if ( file.exists() && isOverlay( file )){
+			
+			plugin.logDebug( "Removing " + file );
+			
+			file.delete();
+		}
+	}
+	
+	private static boolean
+	isOverlay(
+		File		file )
+	{
+		try{
+			LineNumberReader lnr = new LineNumberReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ));
+			
+			try{
+				return( OVERLAY_HEADER.equals( lnr.readLine()));
+			
+			}finally{
+				
+				lnr.close();
+			}
+		}catch( Throwable e ){
+			
+			return( false );
+		}
+	}
+	
+	protected synchronized void
+	reset()
+	{
+		states.clear();
+	}
+	
+	private static byte[]
+	readFile(
+		File		file )
+		
+		throws IOException
+	{
+		InputStream	is = new FileInputStream( file );
+		
+		try{
+			ByteArrayOutputStream	baos = new ByteArrayOutputStream((int)Math.min( Integer.MAX_VALUE, file.length()) + 1 );
+			
+			byte[]	buffer = new byte[65536];
+			
+			while( true ){
+				
+				int	len = is.read( buffer );
+				
+				if ( len <= 0 ){
+					
+					break;
+				}
+				
+				baos.write( buffer, 0, len );
+			}
+			
+			return( baos.toByteArray());
+		
+		}finally{
+			
+			is.close();
+		}
+	}
+	
+	private static byte[]
+	getHash(
+		byte[]		content )
+		
+		throws Exception
+	{
+		return( MessageDigest.getInstance( "SHA-1" ).digest( content ));
+	}
+	
+	private static class
+	FileState
+	{
+		private long		size;
+		private long		mtime;
+		private boolean		stat_reliable;
+		
+		private final byte[]				hash;
+		private final Map<String,String>	values;
+		
+		private
+		FileState(
+			long				_size,
+			long				_mtime,
+			long				_observed,
+			byte[]				_hash,
+			Map<String,String>	_values )
+		{
+			hash	= _hash;
+			values	= _values;
+			
+			setStat( _size, _mtime, _observed );
+		}
+		
+		private void
+		setStat(
+			long		_size,
+			long		_mtime,
+			long		_observed )
+		{
+			size			= _size;
+			mtime			= _mtime;
+			stat_reliable	= _observed - _mtime > MTIME_GRANULARITY;
+		}
+		
+		private boolean
+		isCurrent(
+			File		file )
+		{
+			return( stat_reliable && file.length() == size && file.lastModified() == mtime );
+		}
+			
+			/**
+			 * Optional keys only need to be present for a new file, Firefox consumes some of them and
+			 * we don't want to keep re-writing them
+			 */
+		
+		private boolean
+		satisfies(
+			Map<String,Object>	prefs,
+			Set<String>			optional_keys )
+		{
+			for ( Map.Entry<String,Object> entry: prefs.entrySet()){
+				
+				String	key = entry.getKey();
+				
+				String	current = values.get( key );
+				
+				if ( current == null ){
+					
+					if ( !optional_keys.contains( key )){
+						
+						return( false );
+					}
+				}else if ( !current.equals( PrefsParser.formatValue( entry.getValue()))){
+					
+					return( false );
+				}
+			}
+			
+			return( true );
+		}
+	}
+}
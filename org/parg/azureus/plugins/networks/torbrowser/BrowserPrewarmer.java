@@ -0,0 +1,218 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.*;
+
+import com.biglybt.core.util.AEThread2;
+import com.biglybt.core.util.Constants;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.SystemTime;
+	
+	/**
+	 * Optionally gets things ready for the first launch once initialisation is complete: Tor
+	 * activation is requested, the prefs are reconciled against the resulting config and the
+	 * browser's binaries are pulled into the page cache (see BrowserWarmer). Each step waits, with
+	 * backoff, while the machine is busy and the whole thing can be cancelled at any point
+	 */
+
+public class
+BrowserPrewarmer
+{
+		// load average per core above which we consider the machine busy
+	
+	private static final double	BUSY_LOAD			= 0.75;
+	
+	private static final int	BUSY_WAIT_INITIAL	= 5*1000;
+	private static final int	BUSY_WAIT_MAX		= 60*1000;
+	private static final int	BUSY_GIVE_UP		= 10*60*1000;
+	
+	private final TorBrowserPlugin	plugin;
+	private final File				browser_dir;
+	
+	private volatile boolean		cancelled;
+	
+	protected
+	BrowserPrewarmer(
+		TorBrowserPlugin	_plugin,
+		File				_browser_dir )
+	{
+		plugin		= _plugin;
+		browser_dir	= _browser_dir;
+	}
+	
+	protected void
+	start()
+	{
+		AEThread2 thread =
+			new AEThread2( "TorBrowser:prewarm" )
+			{
+				@Override
+				public void
+				run()
+				{
+					long	start = SystemTime.getMonotonousTime();
+					
+					try{
+						if ( !waitUntilIdle()){
+							
+							return;
+						}
+						
+						plugin.checkTor( false );
+						
+						if ( !waitUntilIdle()){
+							
+							return;
+						}
+						
+						plugin.checkConfig();
+						
+						if ( !waitUntilIdle()){
+							
+							return;
+						}
+							
+							// page cache warm-up of the binaries, a no-op if this has already been done
+						
+						plugin.startWarmer();
+						
+						plugin.log( "Pre-warm complete in " + ( SystemTime.getMonotonousTime() - start ) + "ms" );
+					}catch( Throwable e ){
+						
+						if ( !cancelled ){
+							
+							plugin.log( "Pre-warm failed: " + Debug.getNestedExceptionMessage( e ));
+						}
+					}
+				}
+			};
+		
+		thread.setPriority( Thread.MIN_PRIORITY );
+		
+		thread.start();
+	}
+		
+		/**
+		 * @return false if cancelled or the machine stayed busy for too long
+		 */
+	
+	private boolean
+	waitUntilIdle()
+	{
+		long	start 	= SystemTime.getMonotonousTime();
+		long	delay	= BUSY_WAIT_INITIAL;
+		
+		while( !cancelled ){
+			
+			if ( !isBusy()){
+				
+				return( true );
+			}
+			
+			if ( SystemTime.getMonotonousTime() - start > BUSY_GIVE_UP ){
+				
+				plugin.log( "Pre-warm abandoned as the system is busy" );
+				
+				return( false );
+			}
+			
+			plugin.logDebug( "Pre-warm waiting as the system is busy" );
+			
+			synchronized( this ){
+				
+				try{
+					wait( delay );
+				
+				}catch( InterruptedException e ){
+					
+					return( false );
+				}
+			}
+			
+			delay = Math.min( BUSY_WAIT_MAX, delay*2 );
+		}
+		
+		return( false );
+	}
+	
+	private static boolean
+	isBusy()
+	{
+		try{
+			OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+				
+				// not available on Windows (returns < 0), treat as idle
+			
+			double	load = os.getSystemLoadAverage();
+			
+			return( load >= 0 && load / os.getAvailableProcessors() > BUSY_LOAD );
+		
+		}catch( Throwable e ){
+			
+			return( false );
+		}
+	}
+		
+		/**
+		 * @return the executables used to launch the browser
+		 */
+	
+	protected static List<File>
+	getBinaries(
+		File		browser_dir )
+	{
+		List<File>	result = new ArrayList<File>();
+		
+		if ( Constants.isWindows ){
+			
+			result.add( new File( browser_dir, "Browser" + File.separator + "firefox.exe" ));
+		
+		}else if ( Constants.isOSX ){
+			
+			result.add( new File( browser_dir, "TorBrowser.app/Contents/MacOS/firefox" ));
+		
+		}else{
+			
+			result.add( new File( browser_dir, "Browser/start-tor-browser" ));
+			result.add( new File( browser_dir, "Browser/firefox" ));
+			result.add( new File( browser_dir, "Browser/firefox.real" ));
+		}
+		
+		return( result );
+	}
+	
+	protected void
+	cancel()
+	{
+		cancelled = true;
+		
+		synchronized( this ){
+			
+			notifyAll();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.IOException;
+import java.util.Set;
+
+import com.biglybt.core.util.Debug;
+	
+	/**
+	 * A launched browser process and whatever it spawns. Where java.lang.ProcessHandle is
+	 * available (Java 9+) the pid, child processes and exit notification come from that. On
+	 * older JREs we fall back to working out the pid by diffing process listings and having the
+	 * output pump watch for exit
+	 */
+
+public abstract class
+BrowserProcess
+{
+	protected static BrowserProcess
+	start(
+		ProcessBuilder		pb,
+		PIDSource			legacy_source,
+		OutputPump			pump )
+		
+		throws IOException
+	{
+		if ( BrowserProcessHandle.isSupported()){
+			
+			Process process = pb.start();
+			
+			try{
+				return( new BrowserProcessHandle( process ));
+			
+			}catch( Throwable e ){
+				
+				Debug.out( e );
+				
+				return( new BrowserProcessLegacy( process, null, legacy_source, pump ));
+			}
+		}else{
+				
+				// the listing before the launch has to be taken here, the comparison is done by attach()
+			
+			Set<Integer>	pre_procs = legacy_source.getPIDs();
+			
+			Process process = pb.start();
+			
+			return( new BrowserProcessLegacy( process, pre_procs, legacy_source, pump ));
+		}
+	}
+	
+	private final Process		process;
+	
+	protected
+	BrowserProcess(
+		Process		_process )
+	{
+		process	= _process;
+	}
+	
+	protected Process
+	getProcess()
+	{
+		return( process );
+	}
+		
+		/**
+		 * Completes setup after the process has been spawned, this may block for several seconds
+		 * (legacy pid detection) so shouldn't be called on a thread that has other work queued
+		 */
+	
+	protected abstract void
+	attach();
+		
+		/**
+		 * @return the pid or -1 if not (yet) known
+		 */
+	
+	protected abstract int
+	getPID();
+		
+		/**
+		 * The listener is informed once the process and any of its descendants we know about have exited
+		 */
+	
+	protected abstract void
+	setExitListener(
+		Runnable	listener );
+		
+		/**
+		 * Picks up any new descendants of the process
+		 */
+	
+	protected abstract void
+	refresh();
+	
+	protected abstract void
+	destroy();
+	
+	protected interface
+	PIDSource
+	{
+		public Set<Integer>
+		getPIDs();
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.biglybt.core.util.Constants;
+	
+	/**
+	 * ProcessHandle based implementation, the pid comes straight from the process and exit is
+	 * signalled by onExit() futures so no threads are tied up. Descendants are remembered as they
+	 * are seen because they can no longer be enumerated once their parent has gone (e.g. the
+	 * Windows launcher process that exits after starting the real browser).
+	 * ProcessHandle is Java 9+ so it is only reached through reflection, the plugin still has to
+	 * build and run on Java 8 where isSupported() is false and the legacy implementation is used
+	 */
+
+public class
+BrowserProcessHandle
+	extends BrowserProcess
+{
+	private static final Method	to_handle;
+	private static final Method	pid;
+	private static final Method	is_alive;
+	private static final Method	descendants_method;
+	private static final Method	on_exit;
+	private static final Method	destroy;
+	private static final Method	destroy_forcibly;
+	
+	static{
+		Method[]	methods = new Method[7];
+		
+		try{
+			Class<?>	ph = Class.forName( "java.lang.ProcessHandle" );
+			
+			methods[0] = Process.class.getMethod( "toHandle" );
+			methods[1] = ph.getMethod( "pid" );
+			methods[2] = ph.getMethod( "isAlive" );
+			methods[3] = ph.getMethod( "descendants" );
+			methods[4] = ph.getMethod( "onExit" );
+			methods[5] = ph.getMethod( "destroy" );
+			methods[6] = ph.getMethod( "destroyForcibly" );
+		
+		}catch( Throwable e ){
+			
+			methods = new Method[7];
+		}
+		
+		to_handle			= methods[0];
+		pid					= methods[1];
+		is_alive			= methods[2];
+		descendants_method	= methods[3];
+		on_exit				= methods[4];
+		destroy				= methods[5];
+		destroy_forcibly	= methods[6];
+	}
+	
+	protected static boolean
+	isSupported()
+	{
+		return( destroy_forcibly != null );
+	}
+	
+	private static Object
+	invoke(
+		Method		method,
+		Object		target )
+	{
+		try{
+			return( method.invoke( target ));
+		
+		}catch( Throwable e ){
+			
+			throw( new RuntimeException( "ProcessHandle." + method.getName() + " failed", e ));
+		}
+	}
+	
+		// the handles are java.lang.ProcessHandle instances
+	
+	private final Object		handle;
+	
+	private final Map<Long,Object>	descendants = new ConcurrentHashMap<Long,Object>();
+	
+	protected
+	BrowserProcessHandle(
+		Process		_process )
+	{
+		super( _process );
+		
+		handle = invoke( to_handle, _process );
+		
+		refresh();
+	}
+	
+	@Override
+	protected void
+	attach()
+	{
+	}
+	
+	@Override
+	protected int
+	getPID()
+	{
+		return(((Long)invoke( pid, handle )).intValue());
+	}
+	
+	@Override
+	protected void
+	refresh()
+	{
+		if ((Boolean)invoke( is_alive, handle )){
+			
+			((Stream<?>)invoke( descendants_method, handle )).forEach(
+				new Consumer<Object>()
+				{
+					@Override
+					public void
+					accept(
+						Object		child )
+					{
+						descendants.put((Long)invoke( pid, child ), child );
+					}
+				});
+		}
+	}
+	
+	@Override
+	protected void
+	setExitListener(
+		final Runnable		listener )
+	{
+		((CompletableFuture<?>)invoke( on_exit, handle )).whenComplete(
+			new BiConsumer<Object,Throwable>()
+			{
+				@Override
+				public void
+				accept(
+					Object		h,
+					Throwable	error )
+				{
+					waitForDescendants( listener );
+				}
+			});
+	}
+	
+	private void
+	waitForDescendants(
+		final Runnable		listener )
+	{
+		List<CompletableFuture<?>>	live = new ArrayList<CompletableFuture<?>>();
+		
+		for ( Map.Entry<Long,Object> entry: descendants.entrySet()){
+			
+			Object	child = entry.getValue();
+			
+			if ((Boolean)invoke( is_alive, child )){
+				
+				live.add((CompletableFuture<?>)invoke( on_exit, child ));
+			
+			}else{
+				
+				descendants.remove( entry.getKey());
+			}
+		}
+		
+		if ( live.isEmpty()){
+			
+			listener.run();
+		
+		}else{
+			
+			CompletableFuture.allOf( live.toArray( new CompletableFuture<?>[0] )).whenComplete(
+				new BiConsumer<Void,Throwable>()
+				{
+					@Override
+					public void
+					accept(
+						Void		v,
+						Throwable	error )
+					{
+						waitForDescendants( listener );
+					}
+				});
+		}
+	}
+	
+	@Override
+	protected void
+	destroy()
+	{
+		refresh();
+		
+		try{
+			getProcess().getOutputStream().close();
+		
+		}catch( Throwable e ){
+		}
+			
+			// process.destroy doesn't work on Windows :( - rumour is it sends a SIG_TERM which is ignored
+		
+		List<Object>	targets = new ArrayList<Object>( descendants.values());
+		
+		targets.add( handle );
+		
+		for ( Object h: targets ){
+			
+			invoke( Constants.isWindows?destroy_forcibly:destroy, h );
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.biglybt.core.util.Constants;
+import com.biglybt.core.util.SystemTime;
+	
+	/**
+	 * Pre Java 9 implementation: the pid is found by comparing process listings from before and
+	 * after the launch and exit is detected by the output pump. Pids already claimed by another
+	 * launch are skipped so concurrent launches can't both pick up the same process
+	 */
+
+public class
+BrowserProcessLegacy
+	extends BrowserProcess
+{
+	private static final Set<Integer>	claimed_pids = new HashSet<Integer>();
+	
+	private final Set<Integer>				pre_procs;
+	private final BrowserProcess.PIDSource	source;
+	private final OutputPump				pump;
+	
+	private volatile int		process_id	= -1;
+	
+	protected
+	BrowserProcessLegacy(
+		Process						_process,
+		Set<Integer>				_pre_procs,
+		BrowserProcess.PIDSource	_source,
+		OutputPump					_pump )
+	{
+		super( _process );
+		
+		pre_procs	= _pre_procs;
+		source		= _source;
+		pump		= _pump;
+	}
+	
+	@Override
+	protected void
+	attach()
+	{
+		if ( pre_procs == null ){
+			
+			return;
+		}
+		
+		long	now = SystemTime.getMonotonousTime();
+		
+		while( SystemTime.getMonotonousTime() - now < 5*1000 ){
+			
+			Set<Integer>	post_procs = source.getPIDs();
+			
+			post_procs.removeAll( pre_procs );
+			
+			synchronized( claimed_pids ){
+				
+				post_procs.removeAll( claimed_pids );
+				
+				if ( post_procs.size() > 0 ){
+					
+					process_id = post_procs.iterator().next();
+					
+					claimed_pids.add( process_id );
+				}
+			}
+			
+			if ( process_id >= 0 ){
+				
+				final Integer	pid = process_id;
+				
+				pump.addExitListener(
+					getProcess(),
+					new Runnable()
+					{
+						@Override
+						public void
+						run()
+						{
+							synchronized( claimed_pids ){
+								
+								claimed_pids.remove( pid );
+							}
+						}
+					});
+				
+				break;
+			}
+			
+			try{
+				Thread.sleep(1000);
+			
+			}catch( Throwable e ){
+				
+				break;
+			}
+		}
+	}
+	
+	@Override
+	protected int
+	getPID()
+	{
+		return( process_id );
+	}
+	
+	@Override
+	protected void
+	refresh()
+	{
+	}
+	
+	@Override
+	protected void
+	setExitListener(
+		final Runnable		listener )
+	{
+		pump.addExitListener( getProcess(), listener );
+	}
+	
+	@Override
+	protected void
+	destroy()
+	{
+		try{
+			Process process = getProcess();
+			
+			process.getOutputStream().close();
+			
+			process.destroy();
+				
+				// process.destroy doesn't work on Windows :( - rumour is it sends a SIG_TERM which is ignored
+			
+			if ( Constants.isWindows && process_id >= 0 ){
+				
+				Process p = Runtime.getRuntime().exec( new String[]{ "cmd", "/c", "taskkill", "/f", "/pid", String.valueOf( process_id ) });
+				
+				p.waitFor();
+			}
+		}catch( Throwable e ){
+		
+		}
+	}
+}
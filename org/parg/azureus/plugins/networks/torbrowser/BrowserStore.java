@@ -0,0 +1,209 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+	
+	/**
+	 * Content addressed store of browser files held under the plugin data directory. Each
+	 * browser_<ver> tree is made up of hard links to the blobs here so identical files across
+	 * retained versions share a single copy on disk. A blob is only freed once no retained
+	 * version's manifest refers to it. As the trees hold links rather than references, freeing
+	 * a blob can never damage an install, it just loses the sharing for future versions
+	 */
+
+public class
+BrowserStore
+{
+	public static final String	DIR_NAME	= "store";
+	
+	private final File		store_dir;
+	
+	private volatile boolean	enabled	= true;
+	
+	protected
+	BrowserStore(
+		File		data_dir )
+	{
+		store_dir	= new File( data_dir, DIR_NAME );
+	}
+	
+	private File
+	getBlob(
+		String		hash )
+	{
+		return( new File( new File( store_dir, hash.substring( 0, 2 )), hash ));
+	}
+		
+		/**
+		 * Makes the file a link to the blob for its content, adding it to the store if it isn't already there
+		 * @return true if the file is now held in the store
+		 */
+	
+	protected boolean
+	add(
+		File		file,
+		long		size,
+		String		hash )
+	{
+		if ( !enabled ){
+			
+			return( false );
+		}
+		
+		File	blob = getBlob( hash );
+		
+		try{
+			for ( int i=0;i<2;i++ ){
+				
+				if ( blob.exists() && blob.length() != size ){
+						
+						// shouldn't happen as the trees are never written to, but don't propagate a damaged blob
+					
+					blob.delete();
+				}
+				
+				if ( blob.exists()){
+						
+						// link to the existing copy via a temporary name so the file is never missing
+					
+					File	temp = new File( file.getParentFile(), file.getName() + ".lnk" );
+					
+					temp.delete();
+					
+					Files.createLink( temp.toPath(), blob.toPath());
+					
+					Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+					
+					return( true );
+				}
+				
+				File	parent = blob.getParentFile();
+				
+				if ( !parent.isDirectory()){
+					
+					parent.mkdirs();
+				}
+				
+				try{
+					Files.createLink( blob.toPath(), file.toPath());
+					
+					return( true );
+				
+				}catch( FileAlreadyExistsException e ){
+						
+						// another worker added the same content concurrently, link to theirs
+				}
+			}
+		}catch( UnsupportedOperationException e ){
+			
+			enabled = false;
+		
+		}catch( Throwable e ){
+				
+				// most likely the file system doesn't support links, leave the file as it is
+		}
+		
+		return( false );
+	}
+		
+		/**
+		 * Removes blobs that aren't referenced by any of the manifests in the data directory's browser_<ver> installs
+		 * @return number of blobs removed
+		 */
+	
+	protected int
+	gc(
+		File		data_dir )
+	{
+		if ( !store_dir.isDirectory()){
+			
+			return( 0 );
+		}
+		
+		Set<String>	live = new HashSet<String>();
+		
+		File[]	files = data_dir.listFiles();
+		
+		if ( files == null ){
+			
+			return( 0 );
+		}
+		
+		for ( File f: files ){
+			
+			if ( f.isDirectory() && f.getName().startsWith( "browser_" )){
+				
+				BrowserManifest manifest = BrowserManifest.read( f );
+				
+				if ( manifest != null ){
+					
+					live.addAll( manifest.getHashes());
+				}
+			}
+		}
+		
+		int	removed = 0;
+		
+		File[]	buckets = store_dir.listFiles();
+		
+		if ( buckets != null ){
+			
+			for ( File bucket: buckets ){
+				
+				File[] blobs = bucket.listFiles();
+				
+				if ( blobs == null ){
+					
+					continue;
+				}
+				
+				int	remaining = blobs.length;
+				
+				for ( File blob: blobs ){
+					
+					if ( !live.contains( blob.getName())){
+						
+						if ( blob.delete()){
+							
+							removed++;
+							
+							remaining--;
+						}
+					}
+				}
+				
+				if ( remaining == 0 ){
+					
+					bucket.delete();
+				}
+			}
+		}
+		
+		return( removed );
+	}
+}
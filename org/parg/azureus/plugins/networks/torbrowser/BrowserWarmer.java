@@ -0,0 +1,287 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.util.*;
+
+import com.biglybt.core.util.AEThread2;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.SystemTime;
+	
+	/**
+	 * Reads the largest launch-critical files of an install (libxul/XUL/xul.dll, the omni.ja
+	 * archives and the executables) sequentially so that they are in the page cache when the
+	 * browser starts, rather than being faulted in a page at a time during a cold launch. Reads
+	 * are throttled and limited to a byte budget. The time spent on actual reads is recorded as
+	 * an estimate of the cold start time saved
+	 */
+
+public class
+BrowserWarmer
+{
+	public static final int	DEFAULT_BUDGET_MB	= 256;
+	
+	private static final int	RATE		= 32*1024*1024;		// bytes per second
+	private static final int	CHUNK		= 1024*1024;
+	
+	private static final String[]	WARM_NAMES = { "libxul.so", "XUL", "xul.dll", "omni.ja" };
+	
+	private final TorBrowserPlugin	plugin;
+	private final File				browser_dir;
+	private final long				budget;
+	
+	private volatile boolean		cancelled;
+	
+	private long		bytes_read;
+	private long		read_time;
+	
+	protected
+	BrowserWarmer(
+		TorBrowserPlugin	_plugin,
+		File				_browser_dir,
+		int					_budget_mb )
+	{
+		plugin		= _plugin;
+		browser_dir	= _browser_dir;
+		budget		= Math.max( 0, _budget_mb )*1024L*1024L;
+	}
+	
+	protected void
+	start()
+	{
+		AEThread2 thread =
+			new AEThread2( "TorBrowser:warmer" )
+			{
+				@Override
+				public void
+				run()
+				{
+					warm();
+				}
+			};
+		
+		thread.setPriority( Thread.MIN_PRIORITY );
+		
+		thread.start();
+	}
+	
+	protected void
+	warm()
+	{
+		long	start = SystemTime.getMonotonousTime();
+		
+		try{
+			List<File>	files = getFiles();
+			
+			byte[]	buffer = new byte[CHUNK];
+			
+			int	num_files = 0;
+			
+			for ( File file: files ){
+				
+				if ( cancelled ){
+					
+					break;
+				}
+				
+				warmFile( file, buffer );
+				
+				num_files++;
+			}
+			
+			plugin.log(
+				( cancelled?"Cache warm-up cancelled after ":"Cache warm-up read " ) + num_files + " files (" + ( bytes_read/1024/1024 ) + "MB) in " +
+				( SystemTime.getMonotonousTime() - start ) + "ms, saving an estimated " + read_time + "ms of cold start I/O" );
+		
+		}catch( Throwable e ){
+			
+			if ( !cancelled ){
+				
+				Debug.out( e );
+			}
+		}
+	}
+		
+		/**
+		 * @return launch-critical files, largest first, up to the budget
+		 */
+	
+	private List<File>
+	getFiles()
+	{
+		List<File>	candidates = new ArrayList<File>();
+		
+		for ( File file: BrowserPrewarmer.getBinaries( browser_dir )){
+			
+			if ( file.isFile()){
+				
+				candidates.add( file );
+			}
+		}
+		
+		findFiles( browser_dir, candidates );
+		
+		final Map<File,Long>	sizes = new HashMap<File,Long>();
+		
+		for ( File file: candidates ){
+			
+			sizes.put( file, file.length());
+		}
+		
+		List<File>	sorted = new ArrayList<File>( sizes.keySet());
+		
+		Collections.sort(
+			sorted,
+			new Comparator<File>()
+			{
+				@Override
+				public int
+				compare(
+					File		f1,
+					File		f2 )
+				{
+					return( Long.compare( sizes.get( f2 ), sizes.get( f1 )));
+				}
+			});
+		
+		List<File>	result 	= new ArrayList<File>();
+		long		total	= 0;
+		
+		for ( File file: sorted ){
+			
+			long	size = sizes.get( file );
+			
+			if ( total + size > budget ){
+				
+				continue;
+			}
+			
+			total += size;
+			
+			result.add( file );
+		}
+		
+		return( result );
+	}
+	
+	private void
+	findFiles(
+		File		dir,
+		List<File>	result )
+	{
+		File[]	files = dir.listFiles();
+		
+		if ( files == null ){
+			
+			return;
+		}
+		
+		for ( File file: files ){
+			
+			String	name = file.getName();
+			
+			if ( file.isDirectory()){
+					
+					// skip the profile
+				
+				if ( !name.equals( "Data" )){
+					
+					findFiles( file, result );
+				}
+			}else{
+				
+				for ( String n: WARM_NAMES ){
+					
+					if ( name.equals( n )){
+						
+						result.add( file );
+						
+						break;
+					}
+				}
+			}
+		}
+	}
+	
+	private void
+	warmFile(
+		File		file,
+		byte[]		buffer )
+		
+		throws IOException
+	{
+		InputStream	is = new FileInputStream( file );
+		
+		try{
+			while( !cancelled ){
+				
+				long	read_start = SystemTime.getMonotonousTime();
+				
+				int	len = is.read( buffer );
+				
+				if ( len <= 0 ){
+					
+					break;
+				}
+				
+				long	elapsed = SystemTime.getMonotonousTime() - read_start;
+				
+				read_time	+= elapsed;
+				bytes_read	+= len;
+					
+					// throttle so that each chunk takes at least as long as it would at the target rate
+				
+				long	min_time = (long)len*1000/RATE;
+				
+				if ( elapsed < min_time ){
+					
+					synchronized( this ){
+						
+						try{
+							wait( min_time - elapsed );
+						
+						}catch( InterruptedException e ){
+							
+							break;
+						}
+					}
+				}
+			}
+		}finally{
+			
+			is.close();
+		}
+	}
+	
+	protected void
+	cancel()
+	{
+		cancelled = true;
+		
+		synchronized( this ){
+			
+			notifyAll();
+		}
+	}
+}
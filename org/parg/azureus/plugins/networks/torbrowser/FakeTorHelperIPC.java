@@ -0,0 +1,139 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.util.*;
+
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.pif.ipc.IPCException;
+import com.biglybt.pif.ipc.IPCInterface;
+	
+	/**
+	 * Stands in for the Tor helper plugin's IPC so that launching can be exercised without it.
+	 * It answers getConfig with a fixed socks port and reports Tor as active once start_delay
+	 * has passed since the first activation request, Tor itself has to be provided separately.
+	 * Enabled by setting the system property PROPERTY to the socks port. Calls are counted per
+	 * method so that the IPC traffic of a launch can be seen
+	 */
+
+public class
+FakeTorHelperIPC
+	implements IPCInterface
+{
+	public static final String	PROPERTY		= "aztorbrowser.fake.tor.port";
+	public static final String	PROPERTY_DELAY	= "aztorbrowser.fake.tor.delay";
+	
+	private final int		socks_port;
+	private final long		start_delay;
+	
+	private final Map<String,Integer>	invoke_counts = new TreeMap<String,Integer>();
+	
+	private long		activation_time	= -1;
+	
+		/**
+		 * @return the fake if the system property is set, null otherwise
+		 */
+	
+	protected static FakeTorHelperIPC
+	create()
+	{
+		String	port = System.getProperty( PROPERTY );
+		
+		if ( port == null ){
+			
+			return( null );
+		}
+		
+		return( new FakeTorHelperIPC( Integer.parseInt( port.trim()), Long.getLong( PROPERTY_DELAY, 0 )));
+	}
+	
+	protected
+	FakeTorHelperIPC(
+		int		_socks_port,
+		long	_start_delay )
+	{
+		socks_port	= _socks_port;
+		start_delay	= _start_delay;
+	}
+	
+	@Override
+	public boolean
+	canInvoke(
+		String		method,
+		Object[]	args )
+	{
+		return(( method.equals( "getConfig" ) || method.equals( "requestActivation" )) && args.length == 0 );
+	}
+	
+	@Override
+	public synchronized Object
+	invoke(
+		String		method,
+		Object[]	args )
+		
+		throws IPCException
+	{
+		if ( !canInvoke( method, args )){
+			
+			throw( new IPCException( "Unsupported method: " + method ));
+		}
+		
+		Integer	count = invoke_counts.get( method );
+		
+		invoke_counts.put( method, count==null?1:count+1 );
+		
+		if ( method.equals( "getConfig" )){
+			
+			Map<String,Object>	config = new HashMap<String,Object>();
+			
+			config.put( "socks_port", socks_port );
+			
+			return( config );
+		}
+		
+		long	now = SystemTime.getMonotonousTime();
+		
+		if ( activation_time == -1 ){
+			
+			activation_time = now;
+		}
+		
+		return( now - activation_time >= start_delay );
+	}
+	
+	protected synchronized int
+	getInvokeCount(
+		String		method )
+	{
+		Integer	count = invoke_counts.get( method );
+		
+		return( count==null?0:count );
+	}
+	
+	@Override
+	public synchronized String
+	toString()
+	{
+		return( "FakeTorHelperIPC: port=" + socks_port + ", calls=" + invoke_counts );
+	}
+}
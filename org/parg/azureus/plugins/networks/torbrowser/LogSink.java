@@ -0,0 +1,150 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.util.*;
+
+import com.biglybt.core.util.SimpleTimer;
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.core.util.TimerEvent;
+import com.biglybt.core.util.TimerEventPerformer;
+import com.biglybt.pif.ui.components.UITextArea;
+	
+	/**
+	 * Feeds the plugin view's log area. Lines are queued and appended in one go at most every
+	 * FLUSH_PERIOD rather than one UI update per line. If lines arrive faster than that the
+	 * oldest queued ones are dropped and a count of them appended instead. The log area already
+	 * trims its oldest text once past its default maximum size so that isn't repeated here
+	 */
+
+public class
+LogSink
+{
+	private static final int	FLUSH_PERIOD	= 250;
+	private static final int	MAX_PENDING		= 500;
+	
+	private final UITextArea	area;
+	
+	private final LinkedList<String>	pending = new LinkedList<String>();
+	
+	private TimerEvent	flush_event;
+	
+	private int			dropped;
+	private long		total_dropped;
+	
+	private boolean		destroyed;
+	
+	protected
+	LogSink(
+		UITextArea		_area )
+	{
+		area	= _area;
+	}
+	
+	protected void
+	log(
+		String		str )
+	{
+		synchronized( this ){
+			
+			if ( destroyed ){
+				
+				return;
+			}
+			
+			pending.add( str );
+			
+			if ( pending.size() > MAX_PENDING ){
+				
+				pending.removeFirst();
+				
+				dropped++;
+				total_dropped++;
+			}
+			
+			if ( flush_event == null ){
+				
+				flush_event =
+					SimpleTimer.addEvent(
+						"TorBrowser:logflush",
+						SystemTime.getOffsetTime( FLUSH_PERIOD ),
+						new TimerEventPerformer()
+						{
+							@Override
+							public void
+							perform(
+								TimerEvent	event )
+							{
+								flush();
+							}
+						});
+			}
+		}
+	}
+	
+	private void
+	flush()
+	{
+		StringBuilder	text = new StringBuilder( 1024 );
+		
+		synchronized( this ){
+			
+			flush_event	= null;
+			
+			if ( dropped > 0 ){
+				
+				text.append( "[" ).append( dropped ).append( " lines dropped, " ).append( total_dropped ).append( " in total]\n" );
+				
+				dropped = 0;
+			}
+			
+			for ( String str: pending ){
+				
+				text.append( str ).append( '\n' );
+			}
+			
+			pending.clear();
+		}
+		
+		if ( text.length() > 0 ){
+			
+			area.appendText( text.toString());
+		}
+	}
+	
+	protected void
+	destroy()
+	{
+		synchronized( this ){
+			
+			destroyed = true;
+			
+			if ( flush_event != null ){
+				
+				flush_event.cancel();
+			}
+		}
+		
+		flush();
+	}
+}
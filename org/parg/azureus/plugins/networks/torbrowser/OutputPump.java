@@ -0,0 +1,561 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.util.*;
+
+import com.biglybt.core.util.AEThread2;
+import com.biglybt.core.util.Debug;
+	
+	/**
+	 * Services the stdout/stderr of all browser processes and watches for their exit without
+	 * needing threads per process. Where the JRE has virtual threads (Java 21+) each stream gets
+	 * one, they are cheap enough for blocking reads. Otherwise a single reactor thread polls the
+	 * streams with available() and reads what is there until they are empty (so the process
+	 * never blocks on a full pipe), backing off when everything is idle.
+	 * The reactor thread only runs while there is something registered. Output always goes into
+	 * the caller's ring buffers, it is only split into lines and decoded while the listener
+	 * wants them
+	 */
+
+public class
+OutputPump
+{
+	private static final int	POLL_MIN	= 20;
+	private static final int	POLL_MAX	= 500;
+	
+	private static final int	BUFFER_SIZE	= 8*1024;
+	
+		// per source per cycle, well above a pipe buffer (64K on Linux) so a burst is drained in one go
+	
+	private static final int	MAX_CYCLE_READ	= 1024*1024;
+	private static final int	MAX_LINE	= 16*1024;
+	
+	private static final Object		virtual_builder;
+	private static final Method		virtual_start;
+	
+	static{
+		Object	builder = null;
+		Method	start	= null;
+		
+		try{
+			builder = Thread.class.getMethod( "ofVirtual" ).invoke( null );
+			
+			start = Class.forName( "java.lang.Thread$Builder" ).getMethod( "start", Runnable.class );
+		
+		}catch( Throwable e ){
+			
+			builder = null;
+		}
+		
+		virtual_builder	= builder;
+		virtual_start	= start;
+	}
+	
+	private final List<Source>		sources 	= new ArrayList<Source>();
+	private final List<ExitWatch>	exit_watches	= new ArrayList<ExitWatch>();
+	
+	private AEThread2	reactor;
+	
+	protected
+	OutputPump()
+	{
+	}
+	
+	protected void
+	register(
+		Process		process,
+		OutputRing	out,
+		OutputRing	err,
+		Listener	listener )
+	{
+		add( new Source( process, process.getInputStream(), out, false, listener ));
+		add( new Source( process, process.getErrorStream(), err, true, listener ));
+	}
+		
+		/**
+		 * Stops servicing the process's streams once any output already buffered has been read.
+		 * Virtual thread readers aren't affected, they just run to the end of their stream
+		 * @param drained	informed once the streams are finished with, may be null
+		 */
+	
+	protected void
+	unregister(
+		Process		process,
+		Runnable	drained )
+	{
+		boolean	live = false;
+		
+		synchronized( this ){
+			
+			for ( Source source: sources ){
+				
+				if ( source.process == process ){
+					
+					source.removed	= true;
+					source.drained	= drained;
+					
+					live = true;
+				}
+			}
+			
+			notifyAll();
+		}
+		
+		if ( !live && drained != null ){
+			
+			drained.run();
+		}
+	}
+	
+	protected void
+	addExitListener(
+		final Process		process,
+		final Runnable		listener )
+	{
+		if ( virtual_builder != null ){
+			
+			startVirtual(
+				new Runnable()
+				{
+					@Override
+					public void
+					run()
+					{
+						try{
+							process.waitFor();
+						
+						}catch( Throwable e ){
+						
+						}finally{
+							
+							listener.run();
+						}
+					}
+				});
+		}else{
+			
+			synchronized( this ){
+				
+				exit_watches.add( new ExitWatch( process, listener ));
+				
+				ensureReactor();
+			}
+		}
+	}
+	
+	private void
+	add(
+		final Source	source )
+	{
+		if ( virtual_builder != null ){
+			
+			synchronized( this ){
+				
+				sources.add( source );
+			}
+			
+			startVirtual(
+				new Runnable()
+				{
+					@Override
+					public void
+					run()
+					{
+						source.readAll();
+					}
+				});
+		}else{
+			
+			synchronized( this ){
+				
+				sources.add( source );
+				
+				ensureReactor();
+			}
+		}
+	}
+	
+	private void
+	startVirtual(
+		Runnable	target )
+	{
+		try{
+			virtual_start.invoke( virtual_builder, target );
+		
+		}catch( Throwable e ){
+			
+			Debug.out( e );
+		}
+	}
+	
+	private void
+	ensureReactor()
+	{
+		if ( reactor == null ){
+			
+			reactor =
+				new AEThread2( "TorBrowser:output" )
+				{
+					@Override
+					public void
+					run()
+					{
+						runReactor();
+					}
+				};
+			
+			reactor.start();
+		
+		}else{
+				
+				// pick up new registrations without waiting for the idle back off
+			
+			notifyAll();
+		}
+	}
+	
+	private void
+	runReactor()
+	{
+		byte[]	buffer = new byte[BUFFER_SIZE];
+		
+		int	delay = POLL_MIN;
+		
+		while( true ){
+			
+			List<Source>	current_sources;
+			List<ExitWatch>	current_watches;
+			
+			synchronized( this ){
+				
+				if ( sources.isEmpty() && exit_watches.isEmpty()){
+					
+					reactor = null;
+					
+					return;
+				}
+				
+				current_sources = new ArrayList<Source>( sources );
+				current_watches	= new ArrayList<ExitWatch>( exit_watches );
+			}
+			
+			boolean	active = false;
+			
+			for ( Source source: current_sources ){
+				
+				int	result = source.poll( buffer );
+				
+				if ( result > 0 ){
+					
+					active = true;
+				}
+			}
+			
+			for ( ExitWatch watch: current_watches ){
+				
+				if ( !watch.process.isAlive()){
+					
+					synchronized( this ){
+						
+						exit_watches.remove( watch );
+					}
+					
+					try{
+						watch.listener.run();
+					
+					}catch( Throwable e ){
+						
+						Debug.out( e );
+					}
+					
+					active = true;
+				}
+			}
+			
+			delay = active?POLL_MIN:Math.min( delay*2, POLL_MAX );
+			
+			synchronized( this ){
+				
+				try{
+					wait( delay );
+				
+				}catch( InterruptedException e ){
+				}
+			}
+		}
+	}
+	
+	private void
+	sourceFinished(
+		Source		source )
+	{
+		Runnable	drained;
+		
+		synchronized( this ){
+			
+			sources.remove( source );
+			
+			drained = source.drained;
+			
+			if ( drained != null ){
+				
+				for ( Source s: sources ){
+					
+					if ( s.process == source.process ){
+						
+						drained = null;
+						
+						break;
+					}
+				}
+			}
+		}
+		
+		if ( drained != null ){
+			
+			try{
+				drained.run();
+			
+			}catch( Throwable e ){
+				
+				Debug.out( e );
+			}
+		}
+	}
+	
+	protected interface
+	Listener
+	{
+		public boolean
+		wantsLines();
+		
+		public void
+		lineRead(
+			String		line,
+			boolean		is_error );
+	}
+	
+	private static class
+	ExitWatch
+	{
+		private final Process		process;
+		private final Runnable		listener;
+		
+		private
+		ExitWatch(
+			Process		_process,
+			Runnable	_listener )
+		{
+			process		= _process;
+			listener	= _listener;
+		}
+	}
+	
+	private class
+	Source
+	{
+		private final Process		process;
+		private final InputStream	is;
+		private final OutputRing	ring;
+		private final boolean		is_error;
+		private final Listener		listener;
+		
+		private volatile boolean	removed;
+		private Runnable			drained;
+			
+			// bytes of the current, incomplete, line
+		
+		private final ByteArrayOutputStream	line = new ByteArrayOutputStream( 256 );
+		
+		private
+		Source(
+			Process			_process,
+			InputStream		_is,
+			OutputRing		_ring,
+			boolean			_is_error,
+			Listener		_listener )
+		{
+			process		= _process;
+			is			= _is;
+			ring		= _ring;
+			is_error	= _is_error;
+			listener	= _listener;
+		}
+			
+			/**
+			 * Reads whatever is available, until nothing is or MAX_CYCLE_READ, without blocking
+			 * @return bytes read, 0 if none, -1 if the source is finished with
+			 */
+		
+		private int
+		poll(
+			byte[]		buffer )
+		{
+			int	total = 0;
+			
+			try{
+				while( total < MAX_CYCLE_READ ){
+					
+					int	available = is.available();
+					
+					if ( available <= 0 ){
+						
+						if ( removed && total == 0 ){
+							
+							finished();
+							
+							return( -1 );
+						}
+						
+						return( total );
+					}
+					
+					int	len = is.read( buffer, 0, Math.min( available, buffer.length ));
+					
+					if ( len < 0 ){
+						
+						finished();
+						
+						return( -1 );
+					}
+					
+					received( buffer, len );
+					
+					total += len;
+				}
+				
+				return( total );
+			
+			}catch( Throwable e ){
+				
+				finished();
+				
+				return( -1 );
+			}
+		}
+		
+		private void
+		readAll()
+		{
+			byte[]	buffer = new byte[BUFFER_SIZE];
+			
+			try{
+				while( true ){
+					
+					int	len = is.read( buffer );
+					
+					if ( len < 0 ){
+						
+						break;
+					}
+					
+					received( buffer, len );
+				}
+			}catch( Throwable e ){
+			
+			}finally{
+				
+				finished();
+			}
+		}
+		
+		private void
+		received(
+			byte[]		buffer,
+			int			len )
+		{
+			ring.write( buffer, 0, len );
+			
+			if ( !listener.wantsLines()){
+				
+				line.reset();
+				
+				return;
+			}
+			
+			int	start = 0;
+			
+			for ( int i=0;i<len;i++ ){
+				
+				if ( buffer[i] == '\n' ){
+					
+					line.write( buffer, start, i - start );
+					
+					flush();
+					
+					start = i+1;
+				}
+			}
+			
+			line.write( buffer, start, len - start );
+			
+			if ( line.size() >= MAX_LINE ){
+				
+				flush();
+			}
+		}
+		
+		private void
+		finished()
+		{
+			if ( line.size() > 0 ){
+				
+				flush();
+			}
+			
+			try{
+				is.close();
+			
+			}catch( Throwable e ){
+			}
+			
+			sourceFinished( this );
+		}
+		
+		private void
+		flush()
+		{
+			String	str = line.toString();
+			
+			line.reset();
+			
+			int	len = str.length();
+			
+			if ( len > 0 && str.charAt( len-1 ) == '\r' ){
+				
+				str = str.substring( 0, len-1 );
+			}
+			
+			try{
+				listener.lineRead( str, is_error );
+			
+			}catch( Throwable e ){
+				
+				Debug.out( e );
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.util.*;
+	
+	/**
+	 * Fixed size buffer holding the most recent raw output of a process stream. Writing just
+	 * copies bytes, nothing is decoded until the tail is asked for
+	 */
+
+public class
+OutputRing
+{
+	private final byte[]	buffer;
+	
+	private int			pos;
+	private boolean		wrapped;
+	
+	protected
+	OutputRing(
+		int		size )
+	{
+		buffer = new byte[size];
+	}
+	
+	protected synchronized void
+	write(
+		byte[]		bytes,
+		int			offset,
+		int			len )
+	{
+		if ( len >= buffer.length ){
+			
+			System.arraycopy( bytes, offset + len - buffer.length, buffer, 0, buffer.length );
+			
+			pos		= 0;
+			wrapped	= true;
+			
+			return;
+		}
+		
+		int	first = Math.min( len, buffer.length - pos );
+		
+		System.arraycopy( bytes, offset, buffer, pos, first );
+		
+		if ( first < len ){
+			
+			System.arraycopy( bytes, offset + first, buffer, 0, len - first );
+			
+			wrapped = true;
+		}
+		
+		pos = ( pos + len ) % buffer.length;
+		
+		if ( pos == 0 && len > 0 ){
+			
+			wrapped = true;
+		}
+	}
+		
+		/**
+		 * @return the buffered output as lines, oldest first. If the buffer has wrapped the first,
+		 * partial, line is dropped
+		 */
+	
+	protected List<String>
+	getTail()
+	{
+		byte[]	bytes;
+		boolean	partial;
+		
+		synchronized( this ){
+			
+			partial = wrapped;
+			
+			if ( wrapped ){
+				
+				bytes = new byte[buffer.length];
+				
+				System.arraycopy( buffer, pos, bytes, 0, buffer.length - pos );
+				System.arraycopy( buffer, 0, bytes, buffer.length - pos, pos );
+			
+			}else{
+				
+				bytes = Arrays.copyOf( buffer, pos );
+			}
+		}
+		
+		String[]	lines = new String( bytes ).split( "\r?\n" );
+		
+		List<String>	result = new ArrayList<String>( Arrays.asList( lines ));
+		
+		if ( partial && result.size() > 0 ){
+			
+			result.remove( 0 );
+		}
+		
+		if ( result.size() == 1 && result.get(0).length() == 0 ){
+			
+			result.clear();
+		}
+		
+		return( result );
+	}
+}
@@ -0,0 +1,452 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.util.*;
+	
+	/**
+	 * Single pass tokenizer for Firefox pref files (prefs.js, user.js, extension-overrides.js).
+	 * Handles //, # and block comments, quoted strings with escapes and statements spread across
+	 * lines. Each statement records the character range of its value so that a caller can copy the
+	 * original text through unchanged apart from the values it needs to replace. Anything that
+	 * can't be parsed is skipped up to the next ';' or line end and left as it is
+	 */
+
+public class
+PrefsParser
+{
+	protected static List<Pref>
+	parse(
+		String		text )
+	{
+		List<Pref>	result = new ArrayList<Pref>();
+		
+		int	len = text.length();
+		int	pos	= 0;
+		
+		StringBuilder	key = new StringBuilder();
+		
+		while( true ){
+			
+			pos = skipSpace( text, pos );
+			
+			if ( pos >= len ){
+				
+				break;
+			}
+			
+			int	start = pos;
+			
+			if ( !isIdentifierChar( text.charAt( pos ))){
+				
+				pos = recover( text, pos );
+				
+				continue;
+			}
+			
+			while( pos < len && isIdentifierChar( text.charAt( pos ))){
+				
+				pos++;
+			}
+			
+			String	func = text.substring( start, pos );
+			
+			pos = skipSpace( text, pos );
+			
+			if ( pos >= len || text.charAt( pos ) != '(' ){
+				
+				pos = recover( text, pos );
+				
+				continue;
+			}
+			
+			pos = skipSpace( text, pos+1 );
+			
+			key.setLength( 0 );
+			
+			int	key_end = readString( text, pos, key );
+			
+			if ( key_end < 0 ){
+				
+				pos = recover( text, pos );
+				
+				continue;
+			}
+			
+			pos = skipSpace( text, key_end );
+			
+			if ( pos >= len || text.charAt( pos ) != ',' ){
+				
+				pos = recover( text, pos );
+				
+				continue;
+			}
+			
+			pos = skipSpace( text, pos+1 );
+			
+			int	value_start = pos;
+			int	value_end	= readValue( text, pos );
+			
+			if ( value_end < 0 ){
+				
+				pos = recover( text, pos );
+				
+				continue;
+			}
+			
+			pos = skipSpace( text, value_end );
+				
+				// newer versions allow extra attributes such as pref("x", 1, locked)
+			
+			boolean	ok = true;
+			
+			while( pos < len && text.charAt( pos ) == ',' ){
+				
+				int	attr_end = readValue( text, skipSpace( text, pos+1 ));
+				
+				if ( attr_end < 0 ){
+					
+					ok = false;
+					
+					break;
+				}
+				
+				pos = skipSpace( text, attr_end );
+			}
+			
+			if ( !ok || pos >= len || text.charAt( pos ) != ')' ){
+				
+				pos = recover( text, pos );
+				
+				continue;
+			}
+			
+			pos = skipSpace( text, pos+1 );
+			
+			if ( pos < len && text.charAt( pos ) == ';' ){
+				
+				pos++;
+			}
+			
+			result.add( new Pref( func, key.toString(), text.substring( value_start, value_end ), value_start, value_end ));
+		}
+		
+		return( result );
+	}
+		
+		/**
+		 * @return the value of each key (as it appears in the file) for statements of the given type,
+		 * later statements override earlier ones as they do in the browser
+		 */
+	
+	protected static Map<String,String>
+	getValues(
+		List<Pref>		prefs,
+		String			func )
+	{
+		Map<String,String>	result = new HashMap<String,String>();
+		
+		for ( Pref pref: prefs ){
+			
+			if ( pref.func.equals( func )){
+				
+				result.put( pref.key, pref.value );
+			}
+		}
+		
+		return( result );
+	}
+	
+	protected static String
+	formatValue(
+		Object		value )
+	{
+		if ( value instanceof String ){
+			
+			return( "\"" + escape((String)value ) + "\"" );
+		
+		}else{
+			
+			return( String.valueOf( value ));
+		}
+	}
+	
+	protected static String
+	formatPref(
+		String		func,
+		String		key,
+		Object		value )
+	{
+		return( func + "(\"" + escape( key ) + "\", " + formatValue( value ) + ");" );
+	}
+	
+	private static String
+	escape(
+		String		str )
+	{
+		StringBuilder	sb = new StringBuilder( str.length() + 8 );
+		
+		for ( int i=0;i<str.length();i++ ){
+			
+			char	c = str.charAt( i );
+			
+			if ( c == '"' || c == '\\' ){
+				
+				sb.append( '\\' ).append( c );
+			
+			}else if ( c == '\n' ){
+				
+				sb.append( "\\n" );
+			
+			}else if ( c == '\r' ){
+				
+				sb.append( "\\r" );
+			
+			}else{
+				
+				sb.append( c );
+			}
+		}
+		
+		return( sb.toString());
+	}
+	
+	private static boolean
+	isIdentifierChar(
+		char		c )
+	{
+		return( Character.isLetterOrDigit( c ) || c == '_' );
+	}
+	
+	private static boolean
+	isValueChar(
+		char		c )
+	{
+		return( Character.isLetterOrDigit( c ) || c == '_' || c == '-' || c == '+' || c == '.' );
+	}
+		
+		/**
+		 * skips white space and comments
+		 */
+	
+	private static int
+	skipSpace(
+		String		text,
+		int			pos )
+	{
+		int	len = text.length();
+		
+		while( pos < len ){
+			
+			char	c = text.charAt( pos );
+			
+			if ( Character.isWhitespace( c )){
+				
+				pos++;
+			
+			}else if ( c == '#' || ( c == '/' && pos+1 < len && text.charAt( pos+1 ) == '/' )){
+				
+				while( pos < len && text.charAt( pos ) != '\n' ){
+					
+					pos++;
+				}
+			}else if ( c == '/' && pos+1 < len && text.charAt( pos+1 ) == '*' ){
+				
+				int	end = text.indexOf( "*/", pos+2 );
+				
+				pos = end<0?len:(end+2);
+			
+			}else{
+				
+				break;
+			}
+		}
+		
+		return( pos );
+	}
+		
+		/**
+		 * @return position after the closing quote, -1 if this isn't a valid string
+		 */
+	
+	private static int
+	readString(
+		String			text,
+		int				pos,
+		StringBuilder	decoded )
+	{
+		int	len = text.length();
+		
+		if ( pos >= len ){
+			
+			return( -1 );
+		}
+		
+		char	quote = text.charAt( pos );
+		
+		if ( quote != '"' && quote != '\'' ){
+			
+			return( -1 );
+		}
+		
+		pos++;
+		
+		while( pos < len ){
+			
+			char	c = text.charAt( pos++ );
+			
+			if ( c == quote ){
+				
+				return( pos );
+			
+			}else if ( c == '\\' ){
+				
+				if ( pos >= len ){
+					
+					return( -1 );
+				}
+				
+				char	e = text.charAt( pos++ );
+				
+				if ( e == 'n' ){
+					
+					decoded.append( '\n' );
+				
+				}else if ( e == 'r' ){
+					
+					decoded.append( '\r' );
+				
+				}else if ( e == 't' ){
+					
+					decoded.append( '\t' );
+				
+				}else if ( e == 'x' || e == 'u' ){
+					
+					int	digits = e=='x'?2:4;
+					
+					if ( pos + digits > len ){
+						
+						return( -1 );
+					}
+					
+					try{
+						decoded.append((char)Integer.parseInt( text.substring( pos, pos+digits ), 16 ));
+					
+					}catch( NumberFormatException f ){
+						
+						return( -1 );
+					}
+					
+					pos += digits;
+				
+				}else{
+					
+					decoded.append( e );
+				}
+			}else{
+				
+				decoded.append( c );
+			}
+		}
+		
+		return( -1 );
+	}
+		
+		/**
+		 * @return end of a string, number or boolean value, -1 if none
+		 */
+	
+	private static int
+	readValue(
+		String		text,
+		int			pos )
+	{
+		int	len = text.length();
+		
+		if ( pos >= len ){
+			
+			return( -1 );
+		}
+		
+		char	c = text.charAt( pos );
+		
+		if ( c == '"' || c == '\'' ){
+			
+			return( readString( text, pos, new StringBuilder()));
+		}
+		
+		int	start = pos;
+		
+		while( pos < len && isValueChar( text.charAt( pos ))){
+			
+			pos++;
+		}
+		
+		return( pos==start?-1:pos );
+	}
+	
+	private static int
+	recover(
+		String		text,
+		int			pos )
+	{
+		int	len = text.length();
+		
+		while( pos < len ){
+			
+			char	c = text.charAt( pos++ );
+			
+			if ( c == ';' || c == '\n' ){
+				
+				break;
+			}
+		}
+		
+		return( pos );
+	}
+	
+	protected static class
+	Pref
+	{
+		protected final String	func;
+		protected final String	key;
+		protected final String	value;
+		protected final int		value_start;
+		protected final int		value_end;
+		
+		private
+		Pref(
+			String		_func,
+			String		_key,
+			String		_value,
+			int			_value_start,
+			int			_value_end )
+		{
+			func		= _func;
+			key			= _key;
+			value		= _value;
+			value_start	= _value_start;
+			value_end	= _value_end;
+		}
+	}
+}
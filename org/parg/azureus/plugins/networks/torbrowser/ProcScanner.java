@@ -0,0 +1,232 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.util.*;
+	
+	/**
+	 * Lists processes on Linux by reading /proc/<pid>/cmdline directly rather than forking
+	 * "ps ax". Command lines are returned as raw bytes with the arguments separated by spaces,
+	 * as ps shows them, so that callers can match on them without decoding every process.
+	 * Processes without a command line (kernel threads, zombies) are listed as "[name]" using
+	 * /proc/<pid>/stat, again as ps does
+	 */
+
+public class
+ProcScanner
+{
+	private static final File	PROC = new File( "/proc" );
+	
+	private static final int	MAX_CMDLINE	= 32*1024;
+		
+		/**
+		 * @return pid -> undecoded (UTF-8) command line or null if /proc couldn't be read
+		 */
+	
+	protected static Map<Integer,byte[]>
+	list()
+	{
+		String[]	names = PROC.list();
+		
+		if ( names == null ){
+			
+			return( null );
+		}
+		
+		Map<Integer,byte[]>	result = new HashMap<Integer,byte[]>( names.length );
+		
+		byte[]	buffer = new byte[4096];
+		
+		for ( String name: names ){
+			
+			int	pid = parsePid( name );
+			
+			if ( pid <= 0 ){
+				
+				continue;
+			}
+			
+			int	len = read( new File( PROC, name + "/cmdline" ), buffer );
+			
+			if ( len < 0 ){
+					
+					// exited since we listed the directory
+				
+				continue;
+			}
+			
+			if ( len == 0 ){
+				
+				len = readName( new File( PROC, name + "/stat" ), buffer );
+				
+				if ( len <= 0 ){
+					
+					continue;
+				}
+			
+			}else{
+					
+					// buffer is kept for the next process, only grows for unusually long command lines
+				
+				while( len == buffer.length && buffer.length < MAX_CMDLINE ){
+					
+					buffer = new byte[buffer.length*2];
+					
+					len = read( new File( PROC, name + "/cmdline" ), buffer );
+				}
+				
+				if ( len <= 0 ){
+					
+					continue;
+				}
+				
+				for ( int i=0;i<len;i++ ){
+					
+					if ( buffer[i] == 0 ){
+						
+						buffer[i] = ' ';
+					}
+				}
+			}
+			
+			result.put( pid, Arrays.copyOf( buffer, len ));
+		}
+		
+		return( result );
+	}
+	
+	private static int
+	parsePid(
+		String		name )
+	{
+		int	pid = 0;
+		
+		int	len = name.length();
+		
+		if ( len == 0 || len > 9 ){
+			
+			return( -1 );
+		}
+		
+		for ( int i=0;i<len;i++ ){
+			
+			char	c = name.charAt( i );
+			
+			if ( c < '0' || c > '9' ){
+				
+				return( -1 );
+			}
+			
+			pid = pid*10 + ( c - '0' );
+		}
+		
+		return( pid );
+	}
+		
+		/**
+		 * @return number of bytes read, up to the buffer size, -1 on error
+		 */
+	
+	private static int
+	read(
+		File		file,
+		byte[]		buffer )
+	{
+		try{
+			InputStream	is = new FileInputStream( file );
+			
+			try{
+				int	pos = 0;
+				
+				while( pos < buffer.length ){
+					
+					int	len = is.read( buffer, pos, buffer.length - pos );
+					
+					if ( len <= 0 ){
+						
+						return( pos );
+					}
+					
+					pos += len;
+				}
+				
+				return( pos );
+			
+			}finally{
+				
+				is.close();
+			}
+		}catch( Throwable e ){
+			
+			return( -1 );
+		}
+	}
+		
+		/**
+		 * Replaces the buffer content with "[name]" from the process's stat file
+		 */
+	
+	private static int
+	readName(
+		File		file,
+		byte[]		buffer )
+	{
+		int	len = read( file, buffer );
+		
+		if ( len <= 0 ){
+			
+			return( -1 );
+		}
+		
+		int	start 	= -1;
+		int	end		= -1;
+		
+		for ( int i=0;i<len;i++ ){
+			
+			if ( buffer[i] == '(' && start == -1 ){
+				
+				start = i;
+			
+			}else if ( buffer[i] == ')' ){
+				
+				end = i;
+			}
+		}
+		
+		if ( start == -1 || end <= start ){
+			
+			return( -1 );
+		}
+		
+		buffer[start] = '[';
+		
+		System.arraycopy( buffer, start, buffer, 0, end - start );
+		
+		int	name_len = end - start;
+		
+		buffer[name_len] = ']';
+		
+		return( name_len + 1 );
+	}
+}
@@ -0,0 +1,440 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.util.*;
+
+import com.biglybt.core.util.Constants;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.SystemTime;
+	
+	/**
+	 * A shared, short-lived listing of the process table. A launch asks for the same processes
+	 * several times in quick succession (existing Firefox check, pids before and after the
+	 * launch) so rather than listing the processes for each query one listing is taken and
+	 * queries are answered from it until it is more than TTL old. Callers that arrive while a
+	 * listing is being taken wait for it rather than starting their own. Queries that compare
+	 * listings from either side of a launch ask for a fresh one, a cached listing may predate
+	 * another launch and make its process look like ours.
+	 * Command lines are held as undecoded UTF-8 and queries matched against the bytes, so a
+	 * query costs a byte scan rather than decoding every process on the system
+	 */
+
+public class
+ProcessSnapshot
+{
+		// must be less than the 1 second poll interval used when looking for a new browser pid
+	
+	private static final int	TTL	= 500;
+	
+	private final TorBrowserPlugin	plugin;
+	
+	private Snapshot	current;
+	
+	protected
+	ProcessSnapshot(
+		TorBrowserPlugin	_plugin )
+	{
+		plugin	= _plugin;
+	}
+		
+		/**
+		 * @param fresh		take a new listing rather than using one up to TTL old
+		 * @return pids of processes whose executable name is exactly 'exe'
+		 */
+	
+	protected Set<Integer>
+	getProcessesByExe(
+		String		exe,
+		boolean		fresh )
+	{
+		return( new HashSet<Integer>( getSnapshot( fresh ).getProcessesByExe( exe.toLowerCase( Locale.US ))));
+	}
+		
+		/**
+		 * @param exclude	processes whose command line contains this are ignored, may be null
+		 * @param fresh		take a new listing rather than using one up to TTL old
+		 * @return pids of processes whose command line contains 'cmd'
+		 */
+	
+	protected Set<Integer>
+	getProcesses(
+		String		cmd,
+		String		exclude,
+		boolean		fresh )
+	{
+		return( new HashSet<Integer>( getSnapshot( fresh ).getProcesses( cmd, exclude )));
+	}
+	
+	private synchronized Snapshot
+	getSnapshot(
+		boolean		fresh )
+	{
+		long	now = SystemTime.getMonotonousTime();
+		
+		if ( fresh || current == null || now - current.time >= TTL ){
+			
+			current = new Snapshot( list());
+			
+			current.time = SystemTime.getMonotonousTime();
+		}
+		
+		return( current );
+	}
+	
+	private Map<Integer,byte[]>
+	list()
+	{
+		if ( Constants.isWindows ){
+			
+			return( listWindows());
+		
+		}else if ( !Constants.isOSX ){
+				
+				// read the process table directly where possible rather than forking
+			
+			Map<Integer,byte[]>	result = ProcScanner.list();
+			
+			if ( result != null ){
+				
+				return( result );
+			}
+		}
+		
+		return( listPS());
+	}
+		
+		/**
+		 * tasklist only gives us the executable name, which is what we use as the command
+		 */
+	
+	private Map<Integer,byte[]>
+	listWindows()
+	{
+		Map<Integer,byte[]>	result = new HashMap<Integer,byte[]>();
+		
+		try{
+			
+			Process p = Runtime.getRuntime().exec( new String[]{ "cmd", "/c", "tasklist" });
+			
+			try{
+				LineNumberReader lnr = new LineNumberReader( new InputStreamReader( p.getInputStream(), "UTF-8" ));
+				
+				while( true ){
+					
+					String line = lnr.readLine();
+					
+					if ( line == null ){
+						
+						break;
+					}
+						
+						// names containing spaces (system processes) fail to parse and are skipped
+					
+					String[] bits = line.split( "\\s+" );
+					
+					if ( bits.length >= 2 ){
+						
+						try{
+							int		pid 		= Integer.parseInt( bits[1].trim());
+							
+							result.put( pid, bits[0].trim().getBytes( "UTF-8" ));
+						
+						}catch( Throwable e ){
+						
+						}
+					}
+				}
+			}finally{
+				
+				p.destroy();
+			}
+		}catch( Throwable e ){
+			
+			plugin.logDebug( "Failed to list tasks: " + Debug.getNestedExceptionMessage( e ));
+		}
+		
+		return( result );
+	}
+	
+	private Map<Integer,byte[]>
+	listPS()
+	{
+		Map<Integer,byte[]>	result = new HashMap<Integer,byte[]>();
+		
+		try{
+			
+			Process p = Runtime.getRuntime().exec( new String[]{ plugin.findCommand( "bash" ), "-c", "ps ax" });
+			
+			try{
+				LineNumberReader lnr = new LineNumberReader( new InputStreamReader( p.getInputStream(), "UTF-8" ));
+				
+				while( true ){
+					
+					String line = lnr.readLine();
+					
+					if ( line == null ){
+						
+						break;
+					}
+					
+					String[] bits = line.split( "\\s+" );
+					
+					for ( int i=0;i<bits.length;i++ ){
+						
+						String bit = bits[i].trim();
+						
+						if ( bit.length() == 0 ){
+							
+							continue;
+						}
+						
+						try{
+							int		pid 		= Integer.parseInt( bit );
+							
+							result.put( pid, line.getBytes( "UTF-8" ));
+						
+						}catch( Throwable e ){
+						
+						}
+						
+						break;
+					}
+				}
+			}finally{
+				
+				p.destroy();
+			}
+		}catch( Throwable e ){
+			
+			plugin.logDebug( "Failed to list processes: " + Debug.getNestedExceptionMessage( e ));
+		}
+		
+		return( result );
+	}
+	
+	private static class
+	Snapshot
+	{
+		private final Map<Integer,byte[]>		commands;
+			
+			// results of queries against this snapshot, keyed on exe or cmd + exclude
+		
+		private final Map<String,Set<Integer>>	by_exe	= new HashMap<String,Set<Integer>>();
+		private final Map<String,Set<Integer>>	by_cmd	= new HashMap<String,Set<Integer>>();
+		
+		private long	time;
+		
+		private
+		Snapshot(
+			Map<Integer,byte[]>		_commands )
+		{
+			commands	= _commands;
+		}
+		
+		private synchronized Set<Integer>
+		getProcessesByExe(
+			String		exe )
+		{
+			Set<Integer>	result = by_exe.get( exe );
+			
+			if ( result == null ){
+				
+				result = new HashSet<Integer>();
+				
+				byte[]	exe_bytes = getBytes( exe );
+				
+				for ( Map.Entry<Integer,byte[]> entry: commands.entrySet()){
+					
+					if ( isExe( entry.getValue(), exe_bytes )){
+						
+						result.add( entry.getKey());
+					}
+				}
+				
+				by_exe.put( exe, result );
+			}
+			
+			return( result );
+		}
+		
+		private synchronized Set<Integer>
+		getProcesses(
+			String		cmd,
+			String		exclude )
+		{
+			String	key = exclude==null?cmd:( cmd + "\u0000" + exclude );
+			
+			Set<Integer>	result = by_cmd.get( key );
+			
+			if ( result == null ){
+				
+				result = new HashSet<Integer>();
+				
+				byte[]	cmd_bytes 		= getBytes( cmd );
+				byte[]	exclude_bytes	= exclude==null?null:getBytes( exclude );
+				
+				for ( Map.Entry<Integer,byte[]> entry: commands.entrySet()){
+					
+					byte[]	line = entry.getValue();
+					
+					if ( indexOf( line, cmd_bytes ) >= 0 ){
+						
+						if ( exclude_bytes != null && indexOf( line, exclude_bytes ) >= 0 ){
+							
+							continue;
+						}
+						
+						result.add( entry.getKey());
+					}
+				}
+				
+				by_cmd.put( key, result );
+			}
+			
+			return( result );
+		}
+		
+		private static byte[]
+		getBytes(
+			String		str )
+		{
+			try{
+				return( str.getBytes( "UTF-8" ));
+			
+			}catch( UnsupportedEncodingException e ){
+				
+				return( str.getBytes());
+			}
+		}
+			
+			/**
+			 * @param exe	lower-cased
+			 * @return true if the file name of the first token of the command, skipping any
+			 * leading pid and ps status columns, is 'exe' (ASCII case insensitive)
+			 */
+		
+		private static boolean
+		isExe(
+			byte[]		command,
+			byte[]		exe )
+		{
+			int	len = command.length;
+			int	pos = skipSpaces( command, 0 );
+			
+			if ( pos < len && command[pos] >= '0' && command[pos] <= '9' ){
+					
+					// "ps ax" line: pid tty stat time command
+				
+				for ( int i=0;i<4;i++ ){
+					
+					while( pos < len && !isSpace( command[pos] )){
+						
+						pos++;
+					}
+					
+					pos = skipSpaces( command, pos );
+				}
+			}
+			
+			int	start = pos;
+			
+			while( pos < len && command[pos] != ' ' ){
+				
+				if ( command[pos] == '/' || command[pos] == '\\' ){
+					
+					start = pos+1;
+				}
+				
+				pos++;
+			}
+			
+			if ( pos - start != exe.length ){
+				
+				return( false );
+			}
+			
+			for ( int i=0;i<exe.length;i++ ){
+				
+				byte	b = command[start+i];
+				
+				if ( b >= 'A' && b <= 'Z' ){
+					
+					b += 'a' - 'A';
+				}
+				
+				if ( b != exe[i] ){
+					
+					return( false );
+				}
+			}
+			
+			return( true );
+		}
+		
+		private static boolean
+		isSpace(
+			byte		b )
+		{
+			return( b == ' ' || b == '\t' );
+		}
+		
+		private static int
+		skipSpaces(
+			byte[]		bytes,
+			int			pos )
+		{
+			while( pos < bytes.length && isSpace( bytes[pos] )){
+				
+				pos++;
+			}
+			
+			return( pos );
+		}
+		
+		private static int
+		indexOf(
+			byte[]		buffer,
+			byte[]		pattern )
+		{
+			int	max = buffer.length - pattern.length;
+			
+			outer:
+			for ( int i=0;i<=max;i++ ){
+				
+				for ( int j=0;j<pattern.length;j++ ){
+					
+					if ( buffer[i+j] != pattern[j] ){
+						
+						continue outer;
+					}
+				}
+				
+				return( i );
+			}
+			
+			return( -1 );
+		}
+	}
+}
@@ -0,0 +1,526 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.SystemTime;
+	
+	/**
+	 * Migrates profile data from the previous browser install into a new one. Only files that
+	 * don't already exist in the new profile are carried over (the new version's extensions etc
+	 * take precedence). Files are copied with FileChannel.transferTo, spread across a small worker
+	 * pool. Only files the browser never modifies in place (extension packages, which are
+	 * replaced rather than rewritten) are hard-linked, databases, prefs etc are written to
+	 * in place and a link would let the new version alter the old version's profile too.
+	 * Data that the browser rebuilds itself (caches, crash reports etc) is skipped unless
+	 * explicitly included
+	 */
+
+public class
+ProfileMigrator
+{
+	private static final int MAX_THREADS	= 4;
+	
+	private static final int STOP_TIMEOUT	= 60*1000;
+	
+	public static final String	DEFAULT_EXCLUDES =
+		"cache2, startupCache, thumbnails, crashes, minidumps, shader-cache, jumpListCache, OfflineCache, " +
+		"safebrowsing, saved-telemetry-pings, datareporting, *.tmp";
+	
+	public static final String	DEFAULT_INCLUDES = "";
+	
+	private static final List<String>	LINKABLE = parsePatterns( "*.xpi" );
+	
+	private final TorBrowserPlugin	plugin;
+	
+	private final AtomicInteger		files_linked	= new AtomicInteger();
+	private final AtomicInteger		files_copied	= new AtomicInteger();
+	private final AtomicInteger		files_failed	= new AtomicInteger();
+	private final AtomicLong		bytes_moved		= new AtomicLong();
+	
+	private volatile int			files_total;
+	
+	private volatile boolean		link_supported	= true;
+	
+	private volatile boolean		cancelled;
+	
+	private final List<String>		excludes;
+	private final List<String>		includes;
+	
+	private int						files_skipped;
+	private int						dirs_skipped;
+		
+		/**
+		 * @param _excludes		comma separated file/folder names (* wildcard) to skip
+		 * @param _includes		comma separated file/folder names to migrate even if excluded
+		 */
+	
+	protected
+	ProfileMigrator(
+		TorBrowserPlugin	_plugin,
+		String				_excludes,
+		String				_includes )
+	{
+		plugin		= _plugin;
+		excludes	= parsePatterns( _excludes );
+		includes	= parsePatterns( _includes );
+	}
+	
+		/**
+		 * Stops the migration at the next file, the partially migrated profile is left for the
+		 * caller to discard
+		 */
+	
+	protected void
+	cancel()
+	{
+		cancelled = true;
+	}
+	
+	private void
+	checkCancelled()
+		
+		throws IOException
+	{
+		if ( cancelled ){
+			
+			throw( new IOException( "Migration cancelled" ));
+		}
+	}
+	
+	private static List<String>
+	parsePatterns(
+		String		str )
+	{
+		List<String>	result = new ArrayList<String>();
+		
+		if ( str != null ){
+			
+			for ( String bit: str.split( "," )){
+				
+				bit = bit.trim();
+				
+				if ( bit.length() > 0 ){
+					
+					result.add( bit.toLowerCase( Locale.US ));
+				}
+			}
+		}
+		
+		return( result );
+	}
+	
+	private static boolean
+	matches(
+		String			name,
+		List<String>	patterns )
+	{
+		name = name.toLowerCase( Locale.US );
+		
+		for ( String pattern: patterns ){
+			
+			if ( matches( name, pattern, 0, 0 )){
+				
+				return( true );
+			}
+		}
+		
+		return( false );
+	}
+	
+	private static boolean
+	matches(
+		String		name,
+		String		pattern,
+		int			n_pos,
+		int			p_pos )
+	{
+		while( p_pos < pattern.length()){
+			
+			char	c = pattern.charAt( p_pos );
+			
+			if ( c == '*' ){
+				
+				for ( int i=n_pos;i<=name.length();i++ ){
+					
+					if ( matches( name, pattern, i, p_pos+1 )){
+						
+						return( true );
+					}
+				}
+				
+				return( false );
+			}
+			
+			if ( n_pos >= name.length() || name.charAt( n_pos ) != c ){
+				
+				return( false );
+			}
+			
+			n_pos++;
+			p_pos++;
+		}
+		
+		return( n_pos == name.length());
+	}
+	
+	private boolean
+	isExcluded(
+		Path		path )
+	{
+		Path	name = path.getFileName();
+		
+		if ( name == null ){
+			
+			return( false );
+		}
+		
+		String	str = name.toString();
+		
+		return( matches( str, excludes ) && !matches( str, includes ));
+	}
+	
+	protected void
+	migrate(
+		File	from_dir,
+		File	to_dir )
+		
+		throws Exception
+	{
+		if ( !from_dir.isDirectory()){
+			
+			return;
+		}
+		
+		long	start = SystemTime.getMonotonousTime();
+		
+		final Path	from_root 	= from_dir.toPath();
+		final Path	to_root		= to_dir.toPath();
+		
+		final List<Path[]>	work = new ArrayList<Path[]>();
+			
+			// single pass over the metadata to build the work list, directories are created as we go
+		
+		Files.walkFileTree(
+			from_root,
+			new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult
+				preVisitDirectory(
+					Path					dir,
+					BasicFileAttributes		attrs )
+					
+					throws IOException
+				{
+					checkCancelled();
+					
+					if ( !dir.equals( from_root ) && isExcluded( dir )){
+						
+						dirs_skipped++;
+						
+						return( FileVisitResult.SKIP_SUBTREE );
+					}
+					
+					Path	target = to_root.resolve( from_root.relativize( dir ));
+					
+					if ( !Files.isDirectory( target )){
+						
+						try{
+							Files.createDirectories( target );
+						
+						}catch( IOException e ){
+							
+							throw( new IOException( "Failed to create dir: " + target, e ));
+						}
+					}
+					
+					return( FileVisitResult.CONTINUE );
+				}
+				
+				@Override
+				public FileVisitResult
+				visitFile(
+					Path					file,
+					BasicFileAttributes		attrs )
+					
+					throws IOException
+				{
+					checkCancelled();
+					
+					if ( attrs.isRegularFile()){
+						
+						if ( isExcluded( file )){
+							
+							files_skipped++;
+							
+							return( FileVisitResult.CONTINUE );
+						}
+						
+						Path	target = to_root.resolve( from_root.relativize( file ));
+							
+							// logic changed 3.5.3 to only preserve files that don't exist in the new profile as we need
+							// to update extensions etc
+						
+						if ( !Files.exists( target, LinkOption.NOFOLLOW_LINKS )){
+							
+							work.add( new Path[]{ file, target });
+						}
+					}
+					
+					return( FileVisitResult.CONTINUE );
+				}
+				
+				@Override
+				public FileVisitResult
+				visitFileFailed(
+					Path			file,
+					IOException		error )
+				{
+					Debug.out( "Failed to read " + file + ": " + Debug.getNestedExceptionMessage( error ));
+					
+					return( FileVisitResult.CONTINUE );
+				}
+			});
+		
+		files_total = work.size();
+		
+		if ( work.size() > 0 ){
+			
+			int	num_threads = Math.max( 1, Math.min( Math.min( MAX_THREADS, Runtime.getRuntime().availableProcessors()), work.size()));
+			
+			ExecutorService pool =
+				Executors.newFixedThreadPool(
+					num_threads,
+					new ThreadFactory()
+					{
+						private final AtomicInteger	num = new AtomicInteger();
+						
+						@Override
+						public Thread
+						newThread(
+							Runnable r )
+						{
+							Thread t = new Thread( r, "TorBrowser:migrate:" + num.incrementAndGet());
+							
+							t.setDaemon( true );
+							
+							return( t );
+						}
+					});
+			
+			try{
+				List<Future<?>>	futures = new ArrayList<Future<?>>( work.size());
+				
+				for ( final Path[] item: work ){
+					
+					futures.add(
+						pool.submit(
+							new Callable<Void>()
+							{
+								@Override
+								public Void
+								call()
+									
+									throws IOException
+								{
+									checkCancelled();
+									
+									migrateFile( item[0], item[1] );
+									
+									return( null );
+								}
+							}));
+				}
+				
+				for ( Future<?> f: futures ){
+					
+					try{
+						f.get();
+					
+					}catch( ExecutionException e ){
+						
+						checkCancelled();
+						
+						Debug.out( e.getCause());
+					}
+				}
+			}finally{
+				
+				pool.shutdownNow();
+					
+					// the caller renames the profile into place next, nothing can still be writing to it
+				
+				if ( !pool.awaitTermination( STOP_TIMEOUT, TimeUnit.MILLISECONDS )){
+					
+					throw( new Exception( "Migration threads failed to stop" ));
+				}
+			}
+		}
+		
+		plugin.log(
+			"Profile migration: " + files_linked.get() + " files linked, " + files_copied.get() + " copied, " + files_failed.get() + " failed, " +
+			dirs_skipped + " folders and " + files_skipped + " files skipped as rebuildable, " +
+			bytes_moved.get() + " bytes moved in " + ( SystemTime.getMonotonousTime() - start ) + "ms" );
+	}
+	
+		/**
+		 * @return number of files to migrate, 0 until the profile has been scanned
+		 */
+	
+	protected int
+	getFilesTotal()
+	{
+		return( files_total );
+	}
+	
+	protected int
+	getFilesDone()
+	{
+		return( files_linked.get() + files_copied.get() + files_failed.get());
+	}
+	
+	private static boolean
+	isLinkable(
+		Path		file )
+	{
+		Path	name = file.getFileName();
+		
+		return( name != null && matches( name.toString(), LINKABLE ));
+	}
+	
+	private void
+	migrateFile(
+		Path		from_file,
+		Path		to_file )
+	{
+		if ( link_supported && isLinkable( from_file )){
+			
+			try{
+				Files.createLink( to_file, from_file );
+				
+				files_linked.incrementAndGet();
+				
+				bytes_moved.addAndGet( Files.size( from_file ));
+				
+				return;
+			
+			}catch( UnsupportedOperationException e ){
+				
+				link_supported = false;
+			
+			}catch( Throwable e ){
+					
+					// e.g. FAT or cross-device - fall through to a copy
+			}
+		}
+		
+		try{
+			copyFile( from_file, to_file );
+			
+			files_copied.incrementAndGet();
+		
+		}catch( Throwable e ){
+			
+			files_failed.incrementAndGet();
+			
+			try{
+				Files.deleteIfExists( to_file );
+			
+			}catch( Throwable f ){
+			}
+				
+				// changed to not be a terminal error as seen this occur for whatever reason :(
+			
+			String name = from_file.getFileName().toString().toLowerCase( Locale.US );
+			
+			if ( !name.equals( ".ds_store" ) && !cancelled ){
+				
+				Debug.out( "Failed to copy file: " + from_file + " -> " + to_file );
+			}
+		}
+	}
+	
+	private void
+	copyFile(
+		Path		from_file,
+		Path		to_file )
+		
+		throws IOException
+	{
+		FileChannel	in = FileChannel.open( from_file, StandardOpenOption.READ );
+		
+		try{
+			FileChannel out = FileChannel.open( to_file, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW );
+			
+			try{
+				long	size 	= in.size();
+				long	pos		= 0;
+				
+				while( pos < size ){
+					
+					checkCancelled();
+					
+					long	done = in.transferTo( pos, size - pos, out );
+					
+					if ( done <= 0 ){
+						
+						throw( new IOException( "transferTo made no progress" ));
+					}
+					
+					pos += done;
+				}
+				
+				bytes_moved.addAndGet( size );
+			
+			}finally{
+				
+				out.close();
+			}
+		}finally{
+			
+			in.close();
+		}
+		
+		try{
+			Files.setLastModifiedTime( to_file, Files.getLastModifiedTime( from_file ));
+		
+		}catch( Throwable e ){
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import com.biglybt.core.util.SystemTime;
+	
+	/**
+	 * Waits for a condition to become true, probing it at short intervals to begin with and
+	 * backing off exponentially. An optional signal source wakes the waiter as soon as something
+	 * changes rather than at the next probe
+	 */
+
+public class
+ReadinessWaiter
+{
+	private final Signal	signal;
+	private final int		initial_delay;
+	private final int		max_delay;
+	
+	protected
+	ReadinessWaiter(
+		Signal		_signal,
+		int			_initial_delay,
+		int			_max_delay )
+	{
+		signal			= _signal;
+		initial_delay	= _initial_delay;
+		max_delay		= _max_delay;
+	}
+		
+		/**
+		 * @return true if the condition became true, false on timeout or if the signal source
+		 * has gone away
+		 */
+	
+	protected boolean
+	waitFor(
+		Condition		condition,
+		long			timeout )
+	{
+		long	start 	= SystemTime.getMonotonousTime();
+		long	delay	= initial_delay;
+		
+		while( true ){
+				
+				// grab the generation before probing so that a change during the probe isn't missed
+			
+			long	generation = signal==null?0:signal.getGeneration();
+			
+			if ( condition.isReady()){
+				
+				return( true );
+			}
+			
+			long	remaining = timeout - ( SystemTime.getMonotonousTime() - start );
+			
+			if ( remaining <= 0 ){
+				
+				return( false );
+			}
+			
+			long	wait = Math.min( delay, remaining );
+			
+			if ( signal == null ){
+				
+				try{
+					Thread.sleep( wait );
+				
+				}catch( InterruptedException e ){
+					
+					return( false );
+				}
+			}else if ( !signal.waitForChange( generation, wait )){
+				
+				return( false );
+			}
+			
+			delay = Math.min( max_delay, delay*2 );
+		}
+	}
+	
+	protected interface
+	Condition
+	{
+		public boolean
+		isReady();
+	}
+	
+	protected interface
+	Signal
+	{
+		public long
+		getGeneration();
+			
+			/**
+			 * Returns once the generation has moved on from the one supplied or the timeout expires
+			 * @return false if the source has been destroyed (or the wait interrupted) and there is
+			 * no point in waiting any more
+			 */
+		
+		public boolean
+		waitForChange(
+			long		generation,
+			long		timeout );
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.SystemTime;
+	
+	/**
+	 * Checks that a SOCKS5 listener is accepting connections by connecting and completing the
+	 * greeting (version 5, one method, no authentication) without making a request. Runs
+	 * non-blocking against a single deadline so a listener that accepts but never answers
+	 * can't hold up the caller
+	 */
+
+public class
+SocksProbe
+{
+	protected static Result
+	probe(
+		String		host,
+		int			port,
+		int			timeout )
+	{
+		long	start 		= SystemTime.getMonotonousTime();
+		long	deadline	= start + timeout;
+		
+		SocketChannel	channel 	= null;
+		Selector		selector	= null;
+		
+		try{
+			channel = SocketChannel.open();
+			
+			channel.configureBlocking( false );
+			
+			selector = Selector.open();
+			
+			if ( !channel.connect( new InetSocketAddress( host, port ))){
+				
+				channel.register( selector, SelectionKey.OP_CONNECT );
+				
+				if ( !await( selector, deadline )){
+					
+					return( new Result( false, -1, "connect timeout" ));
+				}
+				
+				channel.finishConnect();
+			}
+			
+			ByteBuffer	out = ByteBuffer.wrap( new byte[]{ 0x05, 0x01, 0x00 });
+			
+			while( out.hasRemaining()){
+				
+				if ( channel.write( out ) == 0 ){
+					
+					channel.register( selector, SelectionKey.OP_WRITE );
+					
+					if ( !await( selector, deadline )){
+						
+						return( new Result( false, -1, "write timeout" ));
+					}
+				}
+			}
+			
+			ByteBuffer	in = ByteBuffer.allocate( 2 );
+			
+			channel.register( selector, SelectionKey.OP_READ );
+			
+			while( in.hasRemaining()){
+				
+				int	len = channel.read( in );
+				
+				if ( len < 0 ){
+					
+					return( new Result( false, -1, "connection closed" ));
+				
+				}else if ( len == 0 ){
+					
+					if ( !await( selector, deadline )){
+						
+						return( new Result( false, -1, "read timeout" ));
+					}
+				}
+			}
+			
+			if ( in.get( 0 ) != 0x05 || in.get( 1 ) != 0x00 ){
+				
+				return( new Result( false, -1, "unexpected reply " + ( in.get( 0 )&0xff ) + "/" + ( in.get( 1 )&0xff )));
+			}
+			
+			return( new Result( true, SystemTime.getMonotonousTime() - start, null ));
+		
+		}catch( IOException e ){
+			
+			return( new Result( false, -1, Debug.getNestedExceptionMessage( e )));
+		
+		}finally{
+			
+			if ( selector != null ){
+				
+				try{
+					selector.close();
+				
+				}catch( Throwable e ){
+				}
+			}
+			
+			if ( channel != null ){
+				
+				try{
+					channel.close();
+				
+				}catch( Throwable e ){
+				}
+			}
+		}
+	}
+	
+	private static boolean
+	await(
+		Selector	selector,
+		long		deadline )
+		
+		throws IOException
+	{
+		while( true ){
+			
+			long	remaining = deadline - SystemTime.getMonotonousTime();
+			
+			if ( remaining <= 0 ){
+				
+				return( false );
+			}
+			
+			if ( selector.select( remaining ) > 0 ){
+				
+				selector.selectedKeys().clear();
+				
+				return( true );
+			}
+		}
+	}
+	
+	protected static class
+	Result
+	{
+		private final boolean	ok;
+		private final long		latency;
+		private final String	error;
+		
+		private
+		Result(
+			boolean		_ok,
+			long		_latency,
+			String		_error )
+		{
+			ok		= _ok;
+			latency	= _latency;
+			error	= _error;
+		}
+		
+		protected boolean
+		isOK()
+		{
+			return( ok );
+		}
+		
+		protected long
+		getLatency()
+		{
+			return( latency );
+		}
+		
+		protected String
+		getString()
+		{
+			return( ok?( "OK (" + latency + "ms)" ):( "failed: " + error ));
+		}
+	}
+}
@@ -26,8 +26,7 @@ package org.parg.azureus.plugins.networks.torbrowser;
 import java.io.*;
 import java.net.URL;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.function.BiConsumer;
 
 import com.biglybt.core.util.GeneralUtils;
 import com.biglybt.core.internat.MessageText;
@@ -37,7 +36,6 @@ import com.biglybt.core.util.AEThread2;
 import com.biglybt.core.util.AsyncDispatcher;
 import com.biglybt.core.util.Constants;
 import com.biglybt.core.util.Debug;
-import com.biglybt.core.util.FileUtil;
 import com.biglybt.core.util.SimpleTimer;
 import com.biglybt.core.util.SystemTime;
 import com.biglybt.core.util.TimerEvent;
@@ -54,9 +52,11 @@ import com.biglybt.pif.logging.LoggerChannelListener;
 import com.biglybt.pif.ui.UIManager;
 import com.biglybt.pif.ui.config.ActionParameter;
 import com.biglybt.pif.ui.config.BooleanParameter;
+import com.biglybt.pif.ui.config.IntParameter;
 import com.biglybt.pif.ui.config.LabelParameter;
 import com.biglybt.pif.ui.config.Parameter;
 import com.biglybt.pif.ui.config.ParameterListener;
+import com.biglybt.pif.ui.config.StringParameter;
 import com.biglybt.pif.ui.model.BasicPluginConfigModel;
 import com.biglybt.pif.ui.model.BasicPluginViewModel;
 import com.biglybt.pif.utils.LocaleUtilities;
@@ -68,10 +68,11 @@ TorBrowserPlugin
 	implements UnloadablePlugin
 {
 	public static final String HOME_PAGE = "https://check.torproject.org/";
-
+	
 	private PluginInterface				plugin_interface;
 	private BasicPluginConfigModel 		config_model;
 	private BasicPluginViewModel		view_model;
+	private LogSink						log_sink;
 	private LoggerChannel				log;
 	
 	private IPCInterface		tor_ipc;
@@ -81,43 +82,92 @@ TorBrowserPlugin
 	
 	private boolean	debug_log;
 	
-	private AESemaphore					init_complete_sem = new AESemaphore( "tbp_init" );
+	private StringParameter		migrate_exclude_param;
+	private StringParameter		migrate_include_param;
+	private IntParameter		retain_count_param;
+	private IntParameter		retain_budget_param;
+	private IntParameter		warm_budget_param;
+	private BooleanParameter	prefs_overlay_param;
+	private BooleanParameter	prewarm_param;
+	
+	private BrowserCleaner		cleaner;
+	private BrowserPrewarmer	prewarmer;
+	private BrowserWarmer		warmer;
+	
+	private final BrowserPrefs	prefs_model	= new BrowserPrefs( this );
+	private final ProcessSnapshot	process_snapshot	= new ProcessSnapshot( this );
+	private final OutputPump		output_pump			= new OutputPump();
+	
+	private final TorConfigMonitor	tor_monitor = 
+		new TorConfigMonitor(
+			this,
+			new TorConfigMonitor.IPCProvider()
+			{
+				@Override
+				public IPCInterface
+				getIPC()
+					
+					throws Exception
+				{
+					return( getTorIPC());
+				}
+			});
+	
+	private volatile BrowserInstaller	installer;
 	
 	private Set<BrowserInstance>		browser_instances = new HashSet<BrowserInstance>();
 	
 	private TimerEventPeriodic			browser_timer;
 	
 	private AsyncDispatcher		launch_dispatcher = new AsyncDispatcher( "Tor:launcher" );
+	private AsyncDispatcher		attach_dispatcher = new AsyncDispatcher( "Tor:attach" );
+	private AsyncDispatcher		socks_dispatcher = new AsyncDispatcher( "Tor:socks" );
+	
+	private static final int INSTALL_TIMEOUT		= 5*60*1000;
 	
 	private static final int LAUNCH_TIMEOUT_INIT 	= 30*1000;
 	private static final int LAUNCH_TIMEOUT_NEXT	= 1000;
 	
+	private static final int TOR_PROBE_INITIAL		= 50;
+	private static final int TOR_PROBE_MAX			= 250;
+	
+	private static final int SOCKS_PROBE_TIMEOUT	= 2000;
+	
+	private static final int OUTPUT_RING_SIZE		= 16*1024;
+	
 	private int	launch_timeout	= LAUNCH_TIMEOUT_INIT;
 	
 	private String	last_check_log = "";
 	
+	private boolean	last_socks_ok	= true;
+	private boolean	socks_check_pending;
+	
 	@Override
 	public void
 	initialize(
 		PluginInterface		pi )
-	
+		
 		throws PluginException 
 	{
 		plugin_interface = pi;
-
+		
 		setUnloadable( true );
 		
 		final LocaleUtilities loc_utils = plugin_interface.getUtilities().getLocaleUtilities();
-
+		
 		log	= plugin_interface.getLogger().getTimeStampedChannel( "TorBrowser");
 		
 		final UIManager	ui_manager = plugin_interface.getUIManager();
-
+		
 		view_model = ui_manager.createBasicPluginViewModel( loc_utils.getLocalisedMessageText( "aztorbrowserplugin.name" ));
-
+		
 		view_model.getActivity().setVisible( false );
 		view_model.getProgress().setVisible( false );
 		
+		log_sink = new LogSink( view_model.getLogArea());
+		
+		final LogSink	sink = log_sink;
+		
 		log.addListener(
 				new LoggerChannelListener()
 				{
@@ -127,7 +177,7 @@ TorBrowserPlugin
 						int		type,
 						String	content )
 					{
-						view_model.getLogArea().appendText( content + "\n" );
+						sink.log( content );
 					}
 					
 					@Override
@@ -136,28 +186,28 @@ TorBrowserPlugin
 						String		str,
 						Throwable	error )
 					{
-						view_model.getLogArea().appendText( str + "\n" );
-						view_model.getLogArea().appendText( error.toString() + "\n" );
+						sink.log( str );
+						sink.log( error.toString());
 					}
 				});
-
+		
 		config_model = ui_manager.createBasicPluginConfigModel( "plugins", "aztorbrowserplugin.name" );
-
+		
 		config_model.addLabelParameter2( "aztorbrowserplugin.info1" );
 		config_model.addLabelParameter2( "aztorbrowserplugin.info2" );
-
+		
 		config_model.addLabelParameter2( "aztorbrowserplugin.blank" );
-
+		
 		config_model.addHyperlinkParameter2( "aztorbrowserplugin.link", loc_utils.getLocalisedMessageText( "aztorbrowserplugin.link.url" ));
 		
 		config_model.addLabelParameter2( "aztorbrowserplugin.blank" );
-
+		
 		final LabelParameter status_label = config_model.addLabelParameter2( "aztorbrowserplugin.status");
 		
 		LabelParameter sep3 = config_model.addLabelParameter2( "aztorbrowserplugin.blank" );
 		
 		view_model.setConfigSectionID( "aztorbrowserplugin.name" );
-
+		
 		final ActionParameter launch_param = config_model.addActionParameter2( "aztorbrowserplugin.launch", "aztorbrowserplugin.launch.button" );
 		
 		launch_param.addListener(
@@ -183,7 +233,7 @@ TorBrowserPlugin
 									launch_param.setEnabled( true );
 								}
 							});
-						
+					
 					}catch( Throwable e ){
 						
 						launch_param.setEnabled( true );
@@ -197,7 +247,7 @@ TorBrowserPlugin
 			});
 		
 		final BooleanParameter debug_log_param 	= config_model.addBooleanParameter2( "debug_log", "aztorbrowserplugin.debug_log", false );
-
+		
 		debug_log = debug_log_param.getValue();
 		
 		debug_log_param.addListener(
@@ -212,10 +262,43 @@ TorBrowserPlugin
 				}
 			});
 		
+		prefs_overlay_param = config_model.addBooleanParameter2( "prefs_overlay", "aztorbrowserplugin.prefs.overlay", true );
+		
+		prewarm_param = config_model.addBooleanParameter2( "prewarm", "aztorbrowserplugin.prewarm", false );
+		
 		config_model.createGroup( 
 			"aztorbrowserplugin.browser.group",
 			new Parameter[]{
-					status_label, sep3, launch_param, debug_log_param,
+					status_label, sep3, launch_param, debug_log_param, prefs_overlay_param, prewarm_param,
+			});
+		
+		migrate_exclude_param = config_model.addStringParameter2( "migrate_exclude", "aztorbrowserplugin.migrate.exclude", ProfileMigrator.DEFAULT_EXCLUDES );
+		migrate_include_param = config_model.addStringParameter2( "migrate_include", "aztorbrowserplugin.migrate.include", ProfileMigrator.DEFAULT_INCLUDES );
+		
+		retain_count_param	= config_model.addIntParameter2( "retain_versions", "aztorbrowserplugin.retain.count", BrowserCleaner.DEFAULT_RETAIN_COUNT, 1, 10 );
+		retain_budget_param	= config_model.addIntParameter2( "retain_budget_mb", "aztorbrowserplugin.retain.budget", BrowserCleaner.DEFAULT_RETAIN_BUDGET_MB, 0, 100*1024 );
+		
+		ParameterListener retain_listener = 
+			new ParameterListener()
+			{
+				@Override
+				public void
+				parameterChanged(
+					Parameter param ) 
+				{
+					startCleanup();
+				}
+			};
+		
+		retain_count_param.addListener( retain_listener );
+		retain_budget_param.addListener( retain_listener );
+		
+		warm_budget_param = config_model.addIntParameter2( "warm_budget_mb", "aztorbrowserplugin.warm.budget", BrowserWarmer.DEFAULT_BUDGET_MB, 0, 4096 );
+		
+		config_model.createGroup( 
+			"aztorbrowserplugin.install.group",
+			new Parameter[]{
+					migrate_exclude_param, migrate_include_param, retain_count_param, retain_budget_param, warm_budget_param,
 			});
 		
 		try{
@@ -223,264 +306,131 @@ TorBrowserPlugin
 			
 			File plugin_data_dir	= pi.getPluginconfig().getPluginUserFile( "test" ).getParentFile();
 			
-			if ( !plugin_data_dir.exists()){
-				
-				plugin_data_dir.mkdirs();
-			}
-			
-			deleteOldStuff( plugin_install_dir );
-			deleteOldStuff( plugin_data_dir );
-			
-			File[]	install_files = plugin_install_dir.listFiles();
-			
-			List<File>	old_zip_files = new ArrayList<File>();
-			
-			String 	highest_version_zip			= "0";
-			File	highest_version_zip_file	= null;
-			
-			for ( File file: install_files ){
-				
-				String name = file.getName();
-				
-				if ( file.isFile() && name.startsWith( "browser-" ) && name.endsWith( ".zip" )){
-					
-					String version = name.substring( name.lastIndexOf( "-" ) + 1, name.length() - 4 );
-					
-					if ( Constants.compareVersions( version, highest_version_zip ) > 0 ){
-						
-						highest_version_zip = version;
-						
-						if ( highest_version_zip_file != null ){
-							
-							old_zip_files.add( highest_version_zip_file );
-						}
-						
-						highest_version_zip_file = file;
-					}
-				}
-			}
-			
-			File[]	data_files = plugin_data_dir.listFiles();
-			
-			String 	highest_version_data		= "0";
-			File	highest_version_data_file 	= null;
-			
-			for ( File file: data_files ){
-				
-				String name = file.getName();
-				
-				if ( file.isDirectory() && name.startsWith( "browser_" )){
-					
-					String version = name.substring( 8 );
-					
-					if ( Constants.compareVersions( version, highest_version_data ) > 0 ){
-						
-						highest_version_data = version;
-						
-						highest_version_data_file = file;
-					}
-				}
-			}
-						
-			if ( Constants.compareVersions( highest_version_zip, highest_version_data ) > 0 ){
-				
-				File temp_data = new File( plugin_data_dir, "tmp_" + highest_version_zip );
-				
-				if ( temp_data.exists()){
-					
-					if ( !FileUtil.recursiveDeleteNoCheck( temp_data )){
-						
-						throw( new Exception( "Failed to remove tmp directory: " + temp_data ));
-					}
-				}
-				
-				ZipInputStream zis = null;
-				
-				try{
-					zis = new ZipInputStream( new BufferedInputStream( new FileInputStream( highest_version_zip_file ) ));
-							
-					byte[] buffer = new byte[64*1024];
-					
-					while( true ){
-						
-						ZipEntry	entry = zis.getNextEntry();
-							
-						if ( entry == null ){
-							
-							break;
-						}
-					
-						String	name = entry.getName();
-					
-						if ( name.endsWith( "/" )){
-							
-							continue;
-						}
-						
-						if ( File.separatorChar != '/' ){
-							
-							name = name.replace( '/', File.separatorChar );
-						}
-						
-						File target_out = new File( temp_data, name );
-						
-						File parent_folder = target_out.getParentFile();
-						
-						if ( !parent_folder.exists()){
-							
-							parent_folder.mkdirs();
-						}
-						
-						OutputStream	entry_os = null;
-
-						try{
-							entry_os = new FileOutputStream( target_out );
+			installer =
+				new BrowserInstaller(
+					this,
+					plugin_install_dir,
+					plugin_data_dir,
+					new BrowserInstaller.Listener()
+					{
+						@Override
+						public void
+						stateChanged(
+							BrowserInstaller	inst,
+							int					state,
+							int					progress )
+						{
+							BasicPluginViewModel vm = view_model;
 							
-							while( true ){
-								
-								int	len = zis.read( buffer );
+							if ( state == BrowserInstaller.ST_READY || state == BrowserInstaller.ST_FAILED ){
 								
-								if ( len <= 0 ){
+								if ( vm != null ){
 									
-									break;
+									vm.getActivity().setVisible( false );
+									vm.getProgress().setVisible( false );
 								}
-																											
-								entry_os.write( buffer, 0, len );
-							}
-						}finally{
-							
-							if ( entry_os != null ){
+							}else{
 								
-								try{
-									entry_os.close();
+								String state_str = loc_utils.getLocalisedMessageText( "aztorbrowserplugin.install.state." + BrowserInstaller.getStateName( state ));
+								
+								status_label.setLabelText( loc_utils.getLocalisedMessageText( "aztorbrowserplugin.status.install", new String[]{ state_str, progress + "%" }));
+								
+								if ( vm != null ){
 									
-								}catch( Throwable e ){
+									vm.getActivity().setVisible( true );
+									vm.getActivity().setText( state_str );
 									
-									Debug.out( e );
+									vm.getProgress().setVisible( true );
+									vm.getProgress().setPercentageComplete( progress );
 								}
 							}
 						}
-					}
-				}finally{
-					
-					if ( zis != null ){
-						
-						try{
-							zis.close();
-							
-						}catch( Throwable e ){
-							
-							Debug.out( e );
-						}
-					}
-				}
-				
-					// migrate any existing profile data
-				
-				if ( highest_version_data_file != null ){
-					
-					char slash = File.separatorChar;
-
-					// Version 4.0 - Data moved from /Data to [Browser|TorBrowser.app]/TorBrowser/Data
-					// Windows and Linux use 'Browser'
-					
-					String	top_level_folder = Constants.isOSX?"TorBrowser.app":"Browser";
-					
-					File	old_profile = new File( highest_version_data_file, "Data" );
-					
-					if ( !old_profile.exists()){
-						
-						old_profile = new File( highest_version_data_file, top_level_folder + slash + "TorBrowser" + slash + "Data" );
-					}
-					
-					File	new_profile = new File( temp_data, "Data" );
-					
-					if ( !new_profile.exists()){
-						
-						new_profile = new File( temp_data, top_level_folder + slash + "TorBrowser" + slash + "Data" );
-					}
-					
-					copyProfile( old_profile, new_profile );		
-				}
-				
-				File target_data = new File( plugin_data_dir, "browser_" + highest_version_zip );
-				
-				if ( target_data.exists()){
-					
-					throw( new Exception( "Target already exists: " + target_data ));
-				}
-				
-				if ( !temp_data.renameTo( target_data )){
-					
-					throw( new Exception( "Failed to rename " + temp_data + " to " + target_data ));
-				}
-				
-				for ( File old: old_zip_files ){
-					
-					old.delete();
-				}
-								
-				if ( Constants.isOSX || Constants.isLinux ){
-					
-					String chmod = findCommand( "chmod" );
-					
-					if ( chmod == null ){
-						
-						throw( new Exception( "Failed to find 'chmod' command" ));
-					}
-					
-					Runtime.getRuntime().exec(
-						new String[]{
-							chmod,
-							"-R",
-							"+x",
-							target_data.getAbsolutePath()
-						});
-				}
-				
-				browser_dir = target_data;
-
-			}else{
-				
-				File existing_data = new File( plugin_data_dir, "browser_" + highest_version_data );
-
-				if ( highest_version_data.equals( "0" ) || !existing_data.exists()){
-					
-					throw( new Exception( "No browser version installed" ));
-				}
-								
-				browser_dir = existing_data;
-			}
+					});
 			
-			plugin_interface.addListener(
-				new PluginAdapter()
+			installer.getReadiness().whenComplete(
+				new BiConsumer<File,Throwable>()
 				{
 					@Override
 					public void
-					initializationComplete()
+					accept(
+						File		result,
+						Throwable	error )
 					{
-						try{
-							checkConfig();
+						if ( error == null ){
+							
+							browser_dir = result;
+							
+							BrowserInstaller inst = installer;
 							
-							status_label.setLabelText( loc_utils.getLocalisedMessageText( "aztorbrowserplugin.status.ok" ));
+							if ( inst != null && inst.isCleanupRequired()){
+								
+								startCleanup();
+							}
+								
+								// a freshly extracted version won't be in the page cache, an existing one
+								// is left to the prewarmer or the first launch
 							
-							log( "Initialization complete" );
+							if ( inst != null && inst.isNewVersion()){
 							
-						}catch( Throwable e ){
+								startWarmer();
+							}
+						
+						}else{
 							
-							init_error = Debug.getNestedExceptionMessage( e );
+							init_error = Debug.getNestedExceptionMessage( error );
 							
 							status_label.setLabelText( loc_utils.getLocalisedMessageText( "aztorbrowserplugin.status.fail", new String[]{ init_error }) );
-
-							Debug.out( e );
-							
-							log( "Initialization failed: " + init_error );
 							
-						}finally{
+							Debug.out( error );
 							
-							init_complete_sem.releaseForever();
+							log( "Initialization failed: " + init_error );
 						}
 					}
+				});
+			
+			installer.start();
+			
+			plugin_interface.addListener(
+				new PluginAdapter()
+				{
+					@Override
+					public void
+					initializationComplete()
+					{
+							// the install may still be running, pick up the config once it is complete
+						
+						installer.getReadiness().thenRun(
+							new Runnable()
+							{
+								@Override
+								public void
+								run()
+								{
+									try{
+										checkConfig();
+										
+										status_label.setLabelText( loc_utils.getLocalisedMessageText( "aztorbrowserplugin.status.ok" ));
+										
+										log( "Initialization complete" );
+										
+										if ( prewarm_param.getValue()){
+											
+											startPrewarm();
+										}
+									
+									}catch( Throwable e ){
+										
+										init_error = Debug.getNestedExceptionMessage( e );
+										
+										status_label.setLabelText( loc_utils.getLocalisedMessageText( "aztorbrowserplugin.status.fail", new String[]{ init_error }) );
+										
+										Debug.out( e );
+										
+										log( "Initialization failed: " + init_error );
+									}
+								}
+							});
+					}
 					
 					@Override
 					public void
@@ -489,7 +439,7 @@ TorBrowserPlugin
 						killBrowsers();
 					}
 				});
-				
+		
 		}catch( Throwable e ){
 			
 			init_error = Debug.getNestedExceptionMessage( e );
@@ -502,187 +452,101 @@ TorBrowserPlugin
 		}
 	}
 	
-	private void
-	copyProfile(
-		File	from_dir,
-		File	to_dir )
+	private synchronized void
+	startCleanup()
+	{
+		BrowserInstaller	inst	= installer;
+		File				dir		= browser_dir;
+		
+		if ( inst == null || dir == null ){
+			
+			return;
+		}
+		
+		if ( cleaner != null ){
+			
+			cleaner.cancel();
+		}
+		
+		Set<File>	protect = new HashSet<File>();
+		
+		protect.add( dir );
+		
+		cleaner = new BrowserCleaner( this, inst.getInstallDir(), inst.getDataDir(), retain_count_param.getValue(), retain_budget_param.getValue(), protect );
+		
+		cleaner.start();
+	}
+		
+		/**
+		 * Pulls the launch-critical browser files into the page cache, once per run
+		 */
 	
-		throws Exception
+	protected synchronized void
+	startWarmer()
 	{
-		if ( !from_dir.isDirectory()){
+		File	dir = browser_dir;
+		
+		int	budget = warm_budget_param.getValue();
+		
+		if ( warmer != null || dir == null || budget <= 0 ){
 			
 			return;
 		}
 		
-		File[] from_files = from_dir.listFiles();
+		warmer = new BrowserWarmer( this, dir, budget );
+		
+		warmer.start();
+	}
+	
+	private synchronized void
+	startPrewarm()
+	{
+		File	dir = browser_dir;
 		
-		for ( File from_file: from_files ){
+		if ( prewarmer != null || dir == null ){
 			
-			File to_file = new File( to_dir, from_file.getName());
-			
-			if ( from_file.isDirectory()){
-				
-				if ( !to_file.exists()){
-					
-					if ( !to_file.mkdirs()){
-						
-						throw( new Exception( "Failed to create dir: " + to_file ));
-					}
-				}
-				
-				copyProfile( from_file, to_file );
-				
-			}else{
-				/*
-				if ( to_file.exists()){
-					
-					if ( !to_file.delete()){
-						
-						throw( new Exception( "Failed to delete file: " + to_file ));
-					}
-				}
-				*/
-				
-				// logic changed 3.5.3 to only preserve files that don't exist in the new profile as we need
-				// to update extensions etc
-				
-				if ( !to_file.exists()){
-					
-					if ( !FileUtil.copyFile( from_file, to_file )){
-						
-						// changed to not be a terminal error as seen this occur for whatever reason :(
-						
-						String name = from_file.getName().toLowerCase( Locale.US );
-						
-						if ( !name.equals( ".ds_store" )){
-						
-							Debug.out( "Failed to copy file: " + from_file + " -> " + to_file );
-						}
-					}
-				}
-			}
+			return;
 		}
+		
+		prewarmer = new BrowserPrewarmer( this, dir );
+		
+		prewarmer.start();
 	}
 	
-	private void
-	deleteOldStuff(
-		File		dir )
+	protected String
+	getMigrationExcludes()
 	{
-		File[] files = dir.listFiles();
+		StringParameter param = migrate_exclude_param;
 		
-		if ( files == null || files.length == 0 ){
-			
-			return;
-		}
+		return( param==null?ProfileMigrator.DEFAULT_EXCLUDES:param.getValue());
+	}
+	
+	protected String
+	getMigrationIncludes()
+	{
+		StringParameter param = migrate_include_param;
 		
-		Map<String,List<Object[]>>	map = new HashMap<String,List<Object[]>>();
+		return( param==null?ProfileMigrator.DEFAULT_INCLUDES:param.getValue());
+	}
+	
+	private File
+	getBrowserDir()
 		
-		for ( File f: files ){
-			
-			String name = f.getName();
-			
-			int	pos = name.lastIndexOf( '_' );
-			
-			if ( pos == -1 ){
-				
-				continue;
-			}
-			
-			String root		= name.substring( 0, pos );
-			String ver_str 	= name.substring( pos+1 );
-			
-			if ( ver_str.endsWith( ".jar" ) || ver_str.endsWith( ".zip" )){
-				
-				root += ver_str.substring(  ver_str.length() - 4 );
-				
-				ver_str = ver_str.substring( 0, ver_str.length() - 4 );
-			}
-			
-			for ( char c: ver_str.toCharArray()){
-				
-				if ( c != '.' && !Character.isDigit( c )){
-					
-					ver_str = null;
-					
-					break;
-				}
-			}
-			
-			if ( ver_str != null && ver_str.length() > 0 ){
-				
-				List<Object[]> entry = map.get( root );
-				
-				if ( entry == null ){
-					
-					entry = new ArrayList<Object[]>();
-					
-					map.put( root, entry );
-				}
-				
-				entry.add( new Object[]{ ver_str, f });
-			}
-		}
+		throws Exception
+	{
+		BrowserInstaller inst = installer;
 		
-		for ( Map.Entry<String,List<Object[]>> entry: map.entrySet()){
+		if ( inst == null ){
 			
-			String 			root 	= entry.getKey();
-			List<Object[]>	list	= entry.getValue();
-			
-			Collections.sort(
-				list,
-				new Comparator<Object[]>()
-				{
-					@Override
-					public int
-					compare(
-						Object[] e1, 
-						Object[] e2) 
-					{
-						String ver1 = (String)e1[0];
-						String ver2 = (String)e2[0];
-						
-						return( Constants.compareVersions( ver1, ver2 ));
-					}
-				});
-			
-			/*
-			System.out.println( root );
-			
-			for ( Object[] o: list ){
-				
-				System.out.println( "    " + o[0] + " - " + o[1] );
-			}
-			*/
-			
-			int	ver_to_delete = list.size() - 3;
-							
-			for ( int i=0;i<ver_to_delete;i++ ){
-				
-				File f = (File)list.get(i)[1];
-				
-				delete( f );
-			}
+			throw( new Exception( "Browser not installed" ));
 		}
-	}
-	
-	private void
-	delete(
-		File		f )
-	{
-		if ( f.isDirectory()){
-						
-			File[] files = f.listFiles();
+		
+		if ( !inst.getReadiness().isDone()){
 			
-			if ( files != null ){
-				
-				for ( File x: files ){
-					
-					delete( x );
-				}
-			}
+			log( "Waiting for browser installation to complete" );
 		}
 		
-		f.delete();
+		return( inst.waitForInstall( INSTALL_TIMEOUT ));
 	}
 	
 	private IPCInterface
@@ -693,13 +557,24 @@ TorBrowserPlugin
 		IPCInterface result = tor_ipc;
 		
 		if ( result == null ){
+				
+				// testing without the Tor helper
+			
+			FakeTorHelperIPC fake = FakeTorHelperIPC.create();
+			
+			if ( fake != null ){
+				
+				log( "Using " + fake );
+				
+				return( tor_ipc = fake );
+			}
 			
 			PluginInterface tor_pi = plugin_interface.getPluginManager().getPluginInterfaceByID( "aznettor", true );
 			
 			if ( tor_pi != null ){
 				
 				result = tor_ipc = tor_pi.getIPC();
-				
+			
 			}else{
 				
 				throw( new Exception( "Tor Helper Plugin not installed" ));
@@ -711,59 +586,42 @@ TorBrowserPlugin
 	
 	private int	config_last_port = 0;
 	
-	private void
+	protected void
 	checkConfig()
-	
+		
 		throws Exception
 	{
-		IPCInterface ipc = getTorIPC();
+			// launches refresh the cached port before getting here and at startup nothing is cached yet
 		
-		if ( !ipc.canInvoke( "getConfig", new Object[0] )){
+		int	socks_port = tor_monitor.getSocksPort();
 			
-			throw( new Exception( "Tor Helper Plugin needs updating" ));
-		}
-		
-		int	socks_port;
-
-		try{
-			Map<String,Object>	config = (Map<String,Object>)ipc.invoke( "getConfig", new Object[0] );
+			// the pref files are checked every time to deal with the case whereby someone has an old browser hanging around,
+			// starts Vuze and then kills the old browser (which causes the old browser to most likely re-write its config and trash
+			// over the port if different). The prefs model makes this cheap when nothing has changed
 		
-			socks_port = (Integer)config.get( "socks_port" );
-			
-		}catch( Throwable e ){
+		if ( config_last_port != socks_port ){
 			
-			throw( new Exception( "Tor Helper Plugin communication failure", e ));
-
-		}
-		
-		if ( config_last_port == socks_port ){
+			config_last_port = socks_port;
 			
-			// can't see any harm in doing this everytime - deals with the case whereby someone has an old browser hanging around,
-			// starts Vuze and then kills the old browser (which causes the old browser to most likely re-write its config and trash
-			// over the port if different
-			//return;
+			log( "Tor socks port is " + socks_port );
 		}
 		
-		config_last_port = socks_port;
-		
-		log( "Tor socks port is " + socks_port );
-		
 		Map<String,Object> user_pref = new HashMap<String, Object>();
-		 
+		
 		user_pref.put("browser.startup.homepage", HOME_PAGE );
 		user_pref.put("network.proxy.no_proxies_on", "127.0.0.1");
 		user_pref.put("network.proxy.socks_port", socks_port );
 		
 		user_pref.put("extensions.torbutton.lastUpdateCheck", "1999999999.000" );	// we handle this
 		user_pref.put("extensions.torbutton.updateNeeded", false );	// we handle this
-
+		
 		Set<String>	user_pref_opt = new HashSet<String>();
 		
 		user_pref_opt.add( "browser.startup.homepage" );
 		user_pref_opt.add( "network.proxy.no_proxies_on" );
 		
 		Map<String,Object> ext_pref = new HashMap<String, Object>();
-
+		
 		ext_pref.put("extensions.torbutton.fresh_install", true );
 		ext_pref.put("extensions.torbutton.tor_enabled", true);
 		ext_pref.put("extensions.torbutton.proxies_applied", false );
@@ -773,234 +631,77 @@ TorBrowserPlugin
 		ext_pref.put("extensions.torbutton.custom.socks_host", "127.0.0.1");
 		ext_pref.put("extensions.torbutton.custom.socks_port", socks_port );
 		ext_pref.put("extensions.torbutton.settings_method", "custom");
-
 		
-		File	root = browser_dir;
 		
-		if ( root == null ){
-			
-			throw( new Exception( "Browser not installed" ));
-		}
+		File	root = getBrowserDir();
 		
 		char slash = File.separatorChar;
-
+		
 		// Version 4.0 - Data moved from /Data to [Browser|TorBrowser.app]/TorBrowser/Data
 		// Windows and Linux use 'Browser'
 		
 		String	top_level_folder = Constants.isOSX?"TorBrowser.app":"Browser";
-
+		
 		File	profile_dir = new File( root, top_level_folder + slash + "TorBrowser" + slash + "Data" + slash + "Browser" + slash + "profile.default" );
 		
 		profile_dir.mkdirs();
 		
 		File	user_prefs_file = new File( profile_dir, "prefs.js" );
 		
-		fixPrefs( user_prefs_file, "user_pref", user_pref, user_pref_opt );
+		File	user_overlay_file = new File( profile_dir, "user.js" );
 		
-		File	ext_prefs_dir = new File( profile_dir, "preferences" );
-
-		ext_prefs_dir.mkdirs();
-		
-		File	ext_prefs_file = new File( ext_prefs_dir, "extension-overrides.js" );
-		
-		fixPrefs( ext_prefs_file, "pref", ext_pref, new HashSet<String>() );
-	}
-	
-	private void
-	fixPrefs(
-		File				file,
-		String				pref_key,
-		Map<String,Object>	prefs,
-		Set<String>			optional_keys )
-	
-		throws Exception
-	{
-		List<String>	lines = new ArrayList<String>();
-		
-		boolean updated = false;
-		
-		Map<String,Object>	prefs_to_add = new HashMap<String, Object>( prefs );
-		
-		if ( file.exists()){
-			
-			LineNumberReader	lnr = null;
-			
-			try{
-				lnr = new LineNumberReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ));
-				
-				while( true ){
-					
-					String 	line = lnr.readLine();
-					
-					if ( line == null ){
-						
-						break;
-					}
-					
-					line = line.trim();
-					
-					boolean	handled = false;
-					
-					if ( line.startsWith( pref_key )){
-						
-						int	pos1 = line.indexOf( "\"" );
-						int	pos2 = line.indexOf( "\"", pos1+1 );
-						
-						if ( pos2 > pos1 ){
-							
-							String key = line.substring( pos1+1, pos2 );
-							
-							Object	required_value = prefs_to_add.remove( key );
-							
-							if ( required_value != null ){
-								
-								pos1 = line.indexOf( ",", pos2 + 1 );
-								pos2 = line.indexOf( ")", pos1+1 );
-								
-								if ( pos2 > pos1 ){
-									
-									String	current_str = line.substring( pos1+1, pos2 ).trim();
-									
-									String 	required_str;
-									
-									if ( required_value instanceof String ){
-										
-										required_str = "\"" + required_value + "\"";
-									}else{
-										
-										required_str = String.valueOf( required_value );
-									}
-									
-									if ( !current_str.equals( required_str )){
-										
-										lines.add( pref_key + "(\"" + key + "\", " + required_str + ");");
-										
-										updated	= true;
-										handled = true;
-									}
-								}else{
-									
-									throw( new Exception( "Couldn't parse line: " + line ));
-								}
-							}
-						}
-					}
-					
-					if ( !handled ){
-						
-						lines.add( line );
-					}
-				}
-			}finally{
+		if ( prefs_overlay_param.getValue()){
 				
-				if ( lnr != null ){
-					
-					lnr.close();
-				}
-			}
-		}
-		
-		for ( Map.Entry<String, Object> entry: prefs_to_add.entrySet()){
-			
-			String key = entry.getKey();
+				// required prefs go into user.js which the browser applies on startup, leaving prefs.js to the
+				// browser. Optional ones are only defaults so they just seed a new prefs.js
 			
-				// if all we are missing is optional keys then don't flag as updated (might be flagged
-				// so due to other things of course)
-				// we're dealing with the case that some settings are used-and-removed from the pref
-				// config when firefox runs and we don't want to keep re-writing them
+			Map<String,Object>	required		= new HashMap<String, Object>( user_pref );
+			Map<String,Object>	optional		= new HashMap<String, Object>();
 			
-			if ( !optional_keys.contains( key )){
+			for ( String key: user_pref_opt ){
 				
-				updated = true;
+				optional.put( key, required.remove( key ));
 			}
 			
-			Object val = entry.getValue();
+			prefs_model.writeOverlay( user_overlay_file, "user_pref", required );
 			
-			if ( val instanceof String ){
+			if ( !user_prefs_file.exists()){
 				
-				val = "\"" + val + "\"";
+				prefs_model.fixPrefs( user_prefs_file, "user_pref", optional, user_pref_opt );
 			}
+		}else{
 			
-			lines.add( pref_key + "(\"" + key + "\", " + val + ");");
-		}
-		
-		if ( updated ){
-			
-			logDebug( "Updating " + file );
-			
-			File temp_file 	= new File( file.getAbsolutePath() + ".tmp" );
-			File bak_file 	= new File( file.getAbsolutePath() + ".bak" );
-			
-			temp_file.delete();
+			prefs_model.removeOverlay( user_overlay_file );
 			
-			try{
-				PrintWriter writer = new PrintWriter( new OutputStreamWriter( new FileOutputStream( temp_file ), "UTF-8" ));
-				
-				try{
-					for ( String line: lines ){
-					
-						writer.println( line );
-					}
-				}finally{
-					
-					writer.close();
-				}
-				
-				bak_file.delete();
-				
-				if ( file.exists()){
-					
-					if ( !file.renameTo( bak_file )){
-						
-						throw( new Exception( "Rename of " + file + " to " + bak_file + " failed" ));
-					}
-				}
-					
-				if ( !temp_file.renameTo( file )){
-						
-					if ( bak_file.exists()){
-						
-						bak_file.renameTo( file );
-					}
-					
-					throw( new Exception( "Rename of " + temp_file + " to " + file + " failed" ));
-				}
-			}catch( Throwable e ){
-				
-				temp_file.delete();
-				
-				throw( new Exception( "Failed to udpate " + file, e ));
-			}	
+			prefs_model.fixPrefs( user_prefs_file, "user_pref", user_pref, user_pref_opt );
 		}
+		
+		File	ext_prefs_dir = new File( profile_dir, "preferences" );
+		
+		ext_prefs_dir.mkdirs();
+		
+		File	ext_prefs_file = new File( ext_prefs_dir, "extension-overrides.js" );
+		
+		prefs_model.fixPrefs( ext_prefs_file, "pref", ext_pref, new HashSet<String>() );
 	}
 	
-	
 	private void
 	launchBrowser(
 		final String		url,
 		final boolean		new_window,
 		final Runnable		run_when_done )
-	
+		
 		throws Exception
 	{	
 		log( "Launch request for " + (url==null?"<default>":url) + ", new window=" + new_window );
-	
-		if ( !init_complete_sem.isReleasedForever()){
-			
-			log( "Waiting for initialisation to complete" );
-			
-			init_complete_sem.reserve(60*1000);
-		}
 		
 		if ( init_error != null ){
 			
 			throw( new Exception( "Browser initialisation failed: " + init_error ));
 		}
-
-		final File	root = browser_dir;
-
-		if ( root == null ){
-						
+		
+		if ( installer == null ){
+			
 			throw( new Exception( "Browser not installed" ));
 		}
 		
@@ -1012,8 +713,8 @@ TorBrowserPlugin
 				runSupport() 
 				{
 					try{
-						launchBrowserSupport( root, url, new_window, run_when_done );
-						
+						launchBrowserSupport( url, new_window, run_when_done );
+					
 					}catch( Throwable e ){
 						
 						log( "Launch failed: " + Debug.getNestedExceptionMessage( e ));
@@ -1024,49 +725,58 @@ TorBrowserPlugin
 	
 	private void
 	launchBrowserSupport(
-		File			root,
 		String			url,
 		boolean			new_window,
 		Runnable		run_when_done ) 
-	
+		
 		throws Exception
 	{
 		try{
+			File	root = getBrowserDir();
+			
 			long	now = SystemTime.getMonotonousTime();
+				
+				// don't go on a cached activation state or port that may be up to a poll interval old
 			
-			while( true ){
+			tor_monitor.refresh();
 				
-				if ( checkTor()){
-					
-					launch_timeout	= LAUNCH_TIMEOUT_INIT;
-					
-					break;
-				}
+				// probe quickly to begin with and back off, a change reported by the Tor helper wakes us early
+			
+			ReadinessWaiter	waiter = new ReadinessWaiter( tor_monitor, TOR_PROBE_INITIAL, TOR_PROBE_MAX );
+			
+			boolean	tor_ready = 
+				waiter.waitFor(
+					new ReadinessWaiter.Condition()
+					{
+						@Override
+						public boolean
+						isReady()
+						{
+							return( checkTor( false ) && checkSocks());
+						}
+					},
+					launch_timeout );
 			
-				if ( SystemTime.getMonotonousTime() - now > launch_timeout ){
+			if ( tor_ready ){
 				
-					log( "Timeout waiting for Tor to start" );
-					
-					launch_timeout	= LAUNCH_TIMEOUT_NEXT;
-					
-					break;
-				}
+				launch_timeout	= LAUNCH_TIMEOUT_INIT;
 				
-				try{
-					Thread.sleep( 1000 );
-					
-				}catch( Throwable e ){
-					
-				}
+				logDebug( "Tor ready after " + ( SystemTime.getMonotonousTime() - now ) + "ms" );
+			
+			}else{
+				
+				log( "Timeout waiting for Tor to start" );
+				
+				launch_timeout	= LAUNCH_TIMEOUT_NEXT;
 			}
 			
 			boolean	new_launch;
 			
 			synchronized( browser_instances ){
-			
+				
 				new_launch = browser_instances.size() == 0;
 			}
-
+			
 			if ( new_launch ){
 				
 				if ( !checkFirefox()){
@@ -1078,7 +788,7 @@ TorBrowserPlugin
 			}
 			
 			List<String>	cmd_list = new ArrayList<String>();
-		
+			
 			String	browser_root = root.getAbsolutePath();
 			
 			String slash = File.separator;
@@ -1089,9 +799,9 @@ TorBrowserPlugin
 			String	top_level_folder = Constants.isOSX?"TorBrowser.app":"Browser";
 			
 			String PROFILE_DIR = browser_root + slash + top_level_folder + slash + "TorBrowser" + slash + "Data" + slash + "Browser" + slash + "profile.default";
-						
+			
 			if ( Constants.isWindows ){
-		
+				
 				cmd_list.add( browser_root + slash + "Browser" + slash + "firefox.exe" );
 				
 				cmd_list.add( "-profile" );
@@ -1099,24 +809,24 @@ TorBrowserPlugin
 				cmd_list.add( PROFILE_DIR + slash );
 				
 				cmd_list.add( "-allow-remote" );
-							
+				
 				if ( url != null ){
 					
 					if ( new_window ){
 						
 						cmd_list.add( "-new-window"  );
-							
+					
 					}else{
-							
+						
 						cmd_list.add( "-new-tab"  );
 					}
-								
+					
 					cmd_list.add( "\"" + url + "\"" );
 				}
 			}else if ( Constants.isOSX ){
-								
+				
 				if ( new_launch ){
-										
+					
 					cmd_list.add( browser_root + slash + "TorBrowser.app" + slash + "Contents" + slash + "MacOS" + slash + "firefox" );
 					
 					cmd_list.add( "-profile" );
@@ -1126,20 +836,20 @@ TorBrowserPlugin
 					cmd_list.add( "-allow-remote" );
 					
 					if ( url != null ){
-													
-						if ( new_window ){
 						
-							cmd_list.add( "-new-window"  );
+						if ( new_window ){
 							
+							cmd_list.add( "-new-window"  );
+						
 						}else{
 							
 							cmd_list.add( "-new-tab"  );
 						}
-							
+						
 						cmd_list.add( url );
 					}					
 				}else{
-										
+					
 					cmd_list.add( "open" );
 					
 					cmd_list.add( "-a" );
@@ -1147,10 +857,10 @@ TorBrowserPlugin
 					cmd_list.add( browser_root + slash + "TorBrowser.app" );
 					
 					if ( url != null ){
-							
+						
 						cmd_list.add( url );
 					}
-											
+					
 					cmd_list.add( "--args" );
 					
 					cmd_list.add( "-profile" );
@@ -1164,7 +874,7 @@ TorBrowserPlugin
 						if ( new_window ){
 							
 							cmd_list.add( "-new-window"  );
-							
+						
 						}else{
 							
 							cmd_list.add( "-new-tab"  );
@@ -1182,19 +892,19 @@ TorBrowserPlugin
 				cmd_list.add( "-allow-remote" );
 				
 				if ( url != null ){
-											
-					if ( new_window ){
 					
-						cmd_list.add( "-new-window"  );
+					if ( new_window ){
 						
+						cmd_list.add( "-new-window"  );
+					
 					}else{
 						
 						cmd_list.add( "-new-tab"  );
 					}
-						
+					
 					cmd_list.add( url );
 				}
-				
+			
 			}else{
 				
 				throw( new Exception( "Unsupported OS" ));
@@ -1208,27 +918,26 @@ TorBrowserPlugin
 					"DYLD_LIBRARY_PATH",
 					browser_root + slash + "TorBrowser.app" + slash + "Contents" + slash + "MacOS" );
 			}
-					
-			BrowserInstance browser = new BrowserInstance( pb );	
 			
-			if ( Constants.isOSX && new_launch ){
+			final BrowserInstance browser = new BrowserInstance( pb );	
+				
+				// the rest of the setup happens asynchronously so the next launch request can proceed
 			
-				int	proc_id = browser.getProcessID();
+			if ( Constants.isOSX && new_launch ){
 				
-				if ( proc_id > 0 ){
-					
-					String NL = "\n";
-					
-					String script =
-						"tell application \"System Events\"" + NL +
-						"  set theprocs to every process whose unix id is " + proc_id + NL +
-						"  repeat with proc in theprocs" + NL +
-						"     set the frontmost of proc to true" + NL +
-						"  end repeat" + NL +
-						"end tell" + NL;
-					
-					Runtime.getRuntime().exec( new String[]{ findCommand( "osascript" ), "-e", script });
-				}
+				browser.attach(
+					new Runnable()
+					{
+						@Override
+						public void
+						run()
+						{
+							bringToFront( browser.getProcessID());
+						}
+					});
+			}else{
+				
+				browser.attach( null );
 			}
 		}finally{
 			
@@ -1239,22 +948,48 @@ TorBrowserPlugin
 		}
 	}
 	
-	private String
+	private void
+	bringToFront(
+		int		proc_id )
+	{
+		if ( proc_id > 0 ){
+			
+			String NL = "\n";
+			
+			String script =
+				"tell application \"System Events\"" + NL +
+				"  set theprocs to every process whose unix id is " + proc_id + NL +
+				"  repeat with proc in theprocs" + NL +
+				"     set the frontmost of proc to true" + NL +
+				"  end repeat" + NL +
+				"end tell" + NL;
+			
+			try{
+				Runtime.getRuntime().exec( new String[]{ findCommand( "osascript" ), "-e", script });
+			
+			}catch( Throwable e ){
+				
+				log( "Failed to bring browser to front: " + Debug.getNestedExceptionMessage( e ));
+			}
+		}
+	}
+	
+	protected String
 	findCommand(
 		String	name )
 	{
 		final String[]  locations = { "/bin", "/usr/bin" };
-
+		
 		for ( String s: locations ){
-
+			
 			File f = new File( s, name );
-
+			
 			if ( f.exists() && f.canRead()){
-
+				
 				return( f.getAbsolutePath());
 			}
 		}
-
+		
 		return( name );
 	}
 	
@@ -1273,7 +1008,7 @@ TorBrowserPlugin
 	@Override
 	public void
 	unload() 
-			
+		
 		throws PluginException 
 	{
 		synchronized( browser_instances ){
@@ -1284,6 +1019,39 @@ TorBrowserPlugin
 			}
 		}
 		
+		tor_monitor.destroy();
+		
+		if ( installer != null ){
+			
+			installer.cancel();
+			
+			installer = null;
+		}
+		
+		synchronized( this ){
+			
+			if ( cleaner != null ){
+				
+				cleaner.cancel();
+				
+				cleaner = null;
+			}
+			
+			if ( prewarmer != null ){
+				
+				prewarmer.cancel();
+				
+				prewarmer = null;
+			}
+			
+			if ( warmer != null ){
+				
+				warmer.cancel();
+				
+				warmer = null;
+			}
+		}
+		
 		browser_dir 		= null;
 		init_error			= null;
 		plugin_interface	= null;
@@ -1295,13 +1063,20 @@ TorBrowserPlugin
 			config_model = null;
 		}
 		
+		if ( log_sink != null ){
+			
+			log_sink.destroy();
+			
+			log_sink = null;
+		}
+		
 		if ( view_model != null ){
 			
 			view_model.destroy();
 			
 			view_model = null;
 		}
-		
+			
 			// should be null op due to above test, but leave here for completeness
 		
 		killBrowsers();
@@ -1311,7 +1086,7 @@ TorBrowserPlugin
 	killBrowsers()
 	{
 		final AESemaphore sem = new AESemaphore( "waiter" );
-		
+			
 			// just in case something blocks here...
 		
 		new AEThread2( "killer")
@@ -1349,23 +1124,48 @@ TorBrowserPlugin
 		sem.reserve( 2500 );
 	}
 	
+	protected boolean
+	checkTor(
+		boolean		force )
+	{
+		return( tor_monitor.requestActivation( force ));
+	}
+		
+		/**
+		 * Checks that the socks port the browser will use is actually accepting connections. Can
+		 * block for up to SOCKS_PROBE_TIMEOUT, the result is only logged when it changes
+		 */
+	
 	private boolean
-	checkTor()
+	checkSocks()
 	{
+		SocksProbe.Result	result;
+		
 		try{
-			IPCInterface ipc = getTorIPC();
+			result = SocksProbe.probe( "127.0.0.1", tor_monitor.getSocksPort(), SOCKS_PROBE_TIMEOUT );
+		
+		}catch( Throwable e ){
 			
-			if ( !ipc.canInvoke( "requestActivation", new Object[0] )){
-				
-				return( false );
-			}
+			return( false );
+		}
+		
+		boolean	ok = result.isOK();
+		
+		boolean	changed;
+		
+		synchronized( this ){
 			
-			return( (Boolean)ipc.invoke( "requestActivation", new Object[0] ));
+			changed = ok != last_socks_ok;
 			
-		}catch( Throwable e ){
+			last_socks_ok = ok;
+		}
+		
+		if ( changed ){
 			
-			return( false );
+			log( "Tor socks probe " + result.getString());
 		}
+		
+		return( ok );
 	}
 	
 	private void
@@ -1374,23 +1174,68 @@ TorBrowserPlugin
 		int	num_active;
 		
 		synchronized( browser_instances ){
-		
+			
 			num_active = browser_instances.size();
 			
 			if ( num_active == 0 ){
-			
-				if ( browser_timer != null ){
 				
+				if ( browser_timer != null ){
+					
 					browser_timer.cancel();
-				
+					
 					browser_timer = null;
 				}
 			}
 		}
 		
 		if ( num_active > 0 ){
-		
-			checkTor();
+			
+			synchronized( browser_instances ){
+				
+				for ( BrowserInstance b: browser_instances ){
+					
+					b.refresh();
+				}
+			}
+				
+				// always asked as this also tells the helper that Tor is still in use
+			
+			if ( checkTor( true )){
+					
+					// the probe can block, keep it off the shared timer thread
+				
+				boolean	dispatch;
+				
+				synchronized( this ){
+					
+					dispatch = !socks_check_pending;
+					
+					socks_check_pending = true;
+				}
+				
+				if ( dispatch ){
+				
+					socks_dispatcher.dispatch(
+						new AERunnable()
+						{
+							@Override
+							public void
+							runSupport()
+							{
+								try{
+									checkSocks();
+									
+								}finally{
+									
+									synchronized( TorBrowserPlugin.this ){
+										
+										socks_check_pending = false;
+									}
+								}
+							}
+						});
+				}
+			}
 		}
 		
 		String str = "Actve browsers: " + num_active;
@@ -1419,7 +1264,7 @@ TorBrowserPlugin
 			
 			return( true );
 		}
-				
+		
 		String title 	= MessageText.getString( "aztorbrowserplugin.firefox.found.title" );
 		String text 	= MessageText.getString( "aztorbrowserplugin.firefox.found.text" );
 		
@@ -1430,258 +1275,78 @@ TorBrowserPlugin
 			
 			return( true );
 		}
-
+		
 		UIFunctionsUserPrompter prompter = uif.getUserPrompter(title, text, new String[] {
 			MessageText.getString("Button.yes"),
 			MessageText.getString("Button.no")
 		}, 0);
 		
 		*/
-	
+		
 		MessageBoxShell prompter = new MessageBoxShell(title, text, new String[] {
 				MessageText.getString("Button.yes"),
 				MessageText.getString("Button.no")
 			}, 0 );
-	
-		
-		String remember_id = "aznettorbrowser.firefox.found";
-		
-		prompter.setRemember( 
-			remember_id, 
-			false,
-			MessageText.getString("MessageBoxWindow.nomoreprompting"));
-	
-		prompter.setRememberOnlyIfButton( 0 );
-		
-		prompter.setAutoCloseInMS(0);
-		
-		prompter.open( null );
-		
-		return( prompter.waitUntilClosed() == 0 );
-	}
-	
-	private Set<Integer>
-	getFireFoxProcesses()
-	{
-		if ( Constants.isWindows ){
-			
-			return( getWindowsProcesses( "firefox.exe" ));
-			
-		}else if(  Constants.isOSX ){
-			
-			return( getOSXProcesses( "Firefox.app" ));
-			
-		}else{
-			
-			return( getLinuxProcesses( "firefox", "no-remote" ));
-		}
-	}
-	
-	private Set<Integer>
-	getTorBrowserProcesses()
-	{
-		if ( Constants.isWindows ){
-			
-			return( getWindowsProcesses( "firefox.exe" ));
-			
-		}else if(  Constants.isOSX ){
-			
-			return( getOSXProcesses( "TorBrowser.app" ));
-			
-		}else{
-			
-			return( getLinuxProcesses( "TorBrowser", null ));
-		}
-	}
-	
-	private Set<Integer>
-	getWindowsProcesses(
-		String	exe )
-	{
-		Set<Integer>	result = new HashSet<Integer>();
-		
-		try{
-			
-			Process p = Runtime.getRuntime().exec( new String[]{ "cmd", "/c", "tasklist" });
-			
-			try{
-				LineNumberReader lnr = new LineNumberReader( new InputStreamReader( p.getInputStream(), "UTF-8" ));
-				
-				while( true ){
-					
-					String line = lnr.readLine();
-					
-					if ( line == null ){
-						
-						break;
-					}
-					
-					if ( line.startsWith( exe )){
-						
-						String[] bits = line.split( "\\s+" );
-						
-						if ( bits.length >= 2 ){
-							
-							String	exe_name 	= bits[0].trim();
-							
-							if ( exe_name.equals( exe )){
-								
-								try{
-									int		pid 		= Integer.parseInt( bits[1].trim());
-								
-									result.add( pid );
-									
-								}catch( Throwable e ){
-									
-								}
-							}
-						}
-					}
-				}					
-			}finally{
-				
-				p.destroy();
-			}
-		}catch( Throwable e ){
-			
-			logDebug( "Failed to list tasks: " + Debug.getNestedExceptionMessage( e ));
-		}
 		
-		return( result );
+		
+		String remember_id = "aznettorbrowser.firefox.found";
+		
+		prompter.setRemember( 
+			remember_id, 
+			false,
+			MessageText.getString("MessageBoxWindow.nomoreprompting"));
+		
+		prompter.setRememberOnlyIfButton( 0 );
+		
+		prompter.setAutoCloseInMS(0);
+		
+		prompter.open( null );
+		
+		return( prompter.waitUntilClosed() == 0 );
 	}
 	
 	private Set<Integer>
-	getOSXProcesses(
-		String	cmd  )
+	getFireFoxProcesses()
 	{
-		Set<Integer>	result = new HashSet<Integer>();
-		
-		try{
+		if ( Constants.isWindows ){
 			
-			Process p = Runtime.getRuntime().exec( new String[]{ findCommand( "bash" ), "-c", "ps ax" });
+			return( process_snapshot.getProcessesByExe( "firefox.exe", false ));
+		
+		}else if(  Constants.isOSX ){
 			
-			try{
-				LineNumberReader lnr = new LineNumberReader( new InputStreamReader( p.getInputStream(), "UTF-8" ));
-				
-				while( true ){
-					
-					String line = lnr.readLine();
-					
-					if ( line == null ){
-						
-						break;
-					}
-					
-					if ( line.contains( cmd )){
-						
-						String[] bits = line.split( "\\s+" );
-						
-						for ( int i=0;i<bits.length;i++ ){
-							
-							String bit = bits[i].trim();
-							
-							if ( bit.length() == 0 ){
-								
-								continue;
-							}
-							
-							try{
-								int		pid 		= Integer.parseInt( bit );
-																
-								result.add( pid );
-								
-							}catch( Throwable e ){
-								
-							}
-							
-							break;
-						}
-					}
-				}					
-			}finally{
-				
-				p.destroy();
-			}
-		}catch( Throwable e ){
+			return( process_snapshot.getProcesses( "Firefox.app", null, false ));
+		
+		}else{
 			
-			logDebug( "Failed to list processes: " + Debug.getNestedExceptionMessage( e ));
+			return( process_snapshot.getProcesses( "firefox", "no-remote", false ));
 		}
-		
-		return( result );
 	}
 	
+		// only used to diff the listings from either side of a legacy launch so always fresh
+	
 	private Set<Integer>
-	getLinuxProcesses(
-		String	cmd,
-		String	exclude_str )
+	getTorBrowserProcesses()
 	{
-		Set<Integer>	result = new HashSet<Integer>();
-		
-		try{
+		if ( Constants.isWindows ){
 			
-			Process p = Runtime.getRuntime().exec( new String[]{ findCommand( "bash" ), "-c", "ps ax" });
+			return( process_snapshot.getProcessesByExe( "firefox.exe", true ));
+		
+		}else if(  Constants.isOSX ){
 			
-			try{
-				LineNumberReader lnr = new LineNumberReader( new InputStreamReader( p.getInputStream(), "UTF-8" ));
-				
-				while( true ){
-					
-					String line = lnr.readLine();
-					
-					if ( line == null ){
-						
-						break;
-					}
-					
-					if ( line.contains( cmd )){
-						
-						if ( exclude_str != null && line.contains( exclude_str )){
-							
-							continue;
-						}
-						
-						String[] bits = line.split( "\\s+" );
-						
-						for ( int i=0;i<bits.length;i++ ){
-							
-							String bit = bits[i].trim();
-							
-							if ( bit.length() == 0 ){
-								
-								continue;
-							}
-							
-							try{
-								int		pid 		= Integer.parseInt( bit );
-																
-								result.add( pid );
-								
-							}catch( Throwable e ){
-								
-							}
-							
-							break;
-						}
-					}
-				}					
-			}finally{
-				
-				p.destroy();
-			}
-		}catch( Throwable e ){
+			return( process_snapshot.getProcesses( "TorBrowser.app", null, true ));
+		
+		}else{
 			
-			logDebug( "Failed to list processes: " + Debug.getNestedExceptionMessage( e ));
+			return( process_snapshot.getProcesses( "TorBrowser", null, true ));
 		}
-		
-		return( result );
 	}
-	
+		
 		// IPC methods
 	
 	public void
 	launchURL(
 		URL			url )
-	
+		
 		throws IPCException
 	{
 		launchURL( url, false );
@@ -1691,7 +1356,7 @@ TorBrowserPlugin
 	launchURL(
 		URL			url,
 		boolean		new_window )
-	
+		
 		throws IPCException
 	{
 		launchURL( url, false, null );
@@ -1702,19 +1367,19 @@ TorBrowserPlugin
 		URL			url,
 		boolean		new_window,
 		Runnable	run_when_done )
-	
+		
 		throws IPCException
 	{
 		try{
 			launchBrowser( url==null?null:url.toExternalForm(), new_window, run_when_done );
-			
+		
 		}catch( Throwable e ){
 			
 			throw( new IPCException( "Launch url failed", e ));
 		}
 	}
 	
-	private void
+	protected void
 	logDebug(
 		String		str )
 	{
@@ -1724,7 +1389,7 @@ TorBrowserPlugin
 		}
 	}
 	
-	private void
+	protected void
 	log(
 		String		str )
 	{
@@ -1734,52 +1399,32 @@ TorBrowserPlugin
 	private class
 	BrowserInstance
 	{
-		private Process		process;
-		private int			process_id	= -1;
+		private BrowserProcess	process;
 		
-		private List<AEThread2>	threads = new ArrayList<AEThread2>();
+		private final OutputRing	out_ring	= new OutputRing( OUTPUT_RING_SIZE );
+		private final OutputRing	err_ring	= new OutputRing( OUTPUT_RING_SIZE );
 		
 		private volatile boolean	destroyed;
 		
 		private
 		BrowserInstance(
 			ProcessBuilder		pb )
-		
+			
 			throws IOException
 		{		
-				
-				// process.destroy doesn't work on Windows :( - rumour is it sends a SIG_TERM which is ignored
-				
-			Set<Integer>	pre_procs = getTorBrowserProcesses();
-			
-			process = pb.start();	
-				
-			long	now = SystemTime.getMonotonousTime();
-			
-			while( SystemTime.getMonotonousTime() - now < 5*1000 ){
-				
-				Set<Integer>	post_procs = getTorBrowserProcesses();
-				
-				for ( Integer s: pre_procs ){
-						
-					post_procs.remove( s );
-				}
-					
-				if ( post_procs.size() > 0 ){
-						
-					process_id = post_procs.iterator().next();
-					
-					break;
-				}	
-				
-				try{
-					Thread.sleep(1000);
-					
-				}catch( Throwable e ){
-					
-					break;
-				}
-			}
+			process = 
+				BrowserProcess.start(
+					pb,
+					new BrowserProcess.PIDSource()
+					{
+						@Override
+						public Set<Integer>
+						getPIDs()
+						{
+							return( getTorBrowserProcesses());
+						}
+					},
+					output_pump );
 			
 			try{
 				int	num_proc;
@@ -1810,11 +1455,11 @@ TorBrowserPlugin
 								});
 					}
 				}
-
+				
 				if ( num_proc == 1 ){
 					
 					logDebug( "Main browser process started" );
-					
+				
 				}else{
 					
 					logDebug( "Sub-process started" );
@@ -1824,157 +1469,204 @@ TorBrowserPlugin
 					
 					throw( new Exception( "Unloaded" ));
 				}
+			}catch( Throwable e ){
+				
+				failed( e );
+			}
+		}
+			
+			/**
+			 * Finds the pid (which can take a few seconds on older JREs), starts capturing output and
+			 * watches for exit. Runs on the attach dispatcher rather than the launch dispatcher
+			 */
+		
+		private void
+		attach(
+			final Runnable		attached )
+		{
+			attach_dispatcher.dispatch(
+				new AERunnable()
+				{
+					@Override
+					public void
+					runSupport() 
+					{
+						attachSupport( attached );
+					}
+				});
+		}
+		
+		private void
+		attachSupport(
+			Runnable		attached )
+		{
+			if ( destroyed ){
+				
+				return;
+			}
+			
+			try{
+				process.attach();
+				
+				if ( browser_dir == null ){
+					
+					throw( new Exception( "Unloaded" ));
+				}
 				
-				AEThread2 thread =
-					new AEThread2( "TorBrowser:proc_read_out" )
+				output_pump.register(
+					process.getProcess(),
+					out_ring,
+					err_ring,
+					new OutputPump.Listener()
 					{
 						@Override
-						public void
-						run()
+						public boolean
+						wantsLines()
 						{
-							try{
-								LineNumberReader lnr = new LineNumberReader( new InputStreamReader( process.getInputStream()));
-								
-								while( true ){
-								
-									String line = lnr.readLine();
-									
-									if ( line == null ){
-										
-										break;
-									}
-									
-									logDebug( "> " + line );
-														}
-							}catch( Throwable e ){
-								
-							}
+							return( debug_log );
 						}
-					};
-					
-				threads.add( thread );
-				
-				thread.start();
-				
-				thread =
-					new AEThread2( "TorBrowser:proc_read_err" )
-					{
+						
 						@Override
 						public void
-						run()
+						lineRead(
+							String		line,
+							boolean		is_error )
 						{
-							try{
-								LineNumberReader lnr = new LineNumberReader( new InputStreamReader( process.getErrorStream()));
-								
-								while( true ){
-								
-									String line = lnr.readLine();
-									
-									if ( line == null ){
-										
-										break;
-									}
-																	
-									logDebug( "* " + line );
-								}
-							}catch( Throwable e ){
-								
-							}
+							logDebug(( is_error?"* ":"> " ) + line );
 						}
-					};
-					
-				threads.add( thread );
-					
-				thread.start();
-
-				thread =
-					new AEThread2( "TorBrowser:proc_wait" )
+					});
+				
+				process.setExitListener(
+					new Runnable()
 					{
 						@Override
 						public void
 						run()
 						{
-							try{
-								process.waitFor();
-								
-							}catch( Throwable e ){
+							output_pump.unregister(
+								process.getProcess(),
+								new Runnable()
+								{
+									@Override
+									public void
+									run()
+									{
+										logCrash();
+									}
+								});
+							
+							int	num_proc;
+							
+							synchronized( browser_instances ){
 								
-							}finally{
+								browser_instances.remove( BrowserInstance.this );
 								
-								int	num_proc;
+								num_proc = browser_instances.size();
 								
-								synchronized( browser_instances ){
-									
-									browser_instances.remove( BrowserInstance.this );
-									
-									num_proc = browser_instances.size();
-									
-									setUnloadable( num_proc == 0 );
-								}
+								setUnloadable( num_proc == 0 );
+							}
+							
+							if ( num_proc == 0 ){
 								
-								if ( num_proc == 0 ){
+								logDebug( "Main browser process exited" );
+							
+							}else{
 								
-									logDebug( "Main browser process exited" );
-									
-								}else{
-									
-									logDebug( "Sub-process exited" );
-								}
+								logDebug( "Sub-process exited" );
 							}
 						}
-					};
-					
-				threads.add( thread );
-					
-				thread.start();	
-				
+					});
+			
 			}catch( Throwable e ){
 				
-				synchronized( browser_instances ){
-					
-					browser_instances.remove( this );
-					
-					setUnloadable( browser_instances.size() == 0 );
-				}
+				failed( e );
 				
-				logDebug( "Process setup failed: " + Debug.getNestedExceptionMessage( e));
+				return;
+			}
+			
+			if ( attached != null ){
 				
-				destroy();
+				attached.run();
 			}
 		}
 		
-		private int
-		getProcessID()
+		private void
+		failed(
+			Throwable	e )
 		{
-			return( process_id );
+			synchronized( browser_instances ){
+				
+				browser_instances.remove( this );
+				
+				setUnloadable( browser_instances.size() == 0 );
+			}
+			
+			logDebug( "Process setup failed: " + Debug.getNestedExceptionMessage( e));
+			
+			destroy();
 		}
+			
+			/**
+			 * The output isn't logged unless debug is enabled so log what we have if the browser
+			 * exited abnormally
+			 */
 		
 		private void
-		destroy()
+		logCrash()
 		{
-			destroyed = true;
+			if ( destroyed || debug_log ){
+				
+				return;
+			}
 			
-			try{	
-				for ( AEThread2 thread: threads ){
-					
-					thread.interrupt();
-				}
+			int	exit_code;
+			
+			try{
+				exit_code = process.getProcess().exitValue();
+			
+			}catch( Throwable e ){
 				
-				process.getOutputStream().close();
+				return;
+			}
+			
+			if ( exit_code != 0 ){
 				
-				process.destroy();
+				log( "Browser process exited with code " + exit_code + ", recent output follows" );
 				
-				if ( Constants.isWindows && process_id >= 0 ){
-					
-					logDebug( "Killing process " + process_id );
+				for ( String line: out_ring.getTail()){
 					
-					Process p = Runtime.getRuntime().exec( new String[]{ "cmd", "/c", "taskkill", "/f", "/pid", String.valueOf( process_id ) });
-
-					p.waitFor();
+					log( "> " + line );
 				}
-			}catch( Throwable e ){
 				
+				for ( String line: err_ring.getTail()){
+					
+					log( "* " + line );
+				}
 			}
 		}
+		
+		private int
+		getProcessID()
+		{
+			return( process.getPID());
+		}
+		
+		private void
+		refresh()
+		{
+			process.refresh();
+		}
+		
+		private void
+		destroy()
+		{
+			destroyed = true;
+			
+			output_pump.unregister( process.getProcess(), null );
+			
+			logDebug( "Killing process " + process.getPID());
+			
+			process.destroy();
+		}
 	}
 }
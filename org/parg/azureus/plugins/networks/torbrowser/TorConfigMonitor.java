@@ -0,0 +1,286 @@
+/*
+ * Created on Oct 17, 2026
+ *
+ * Copyright 2026 Azureus Software, Inc.  All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details ( see the LICENSE file ).
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+
+package org.parg.azureus.plugins.networks.torbrowser;
+
+import java.util.Map;
+
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.pif.ipc.IPCInterface;
+	
+	/**
+	 * Caches the Tor helper's socks port and activation state. The helper has no way of telling
+	 * us about changes so the values are polled on demand with an interval that starts short and
+	 * doubles, up to a limit, for as long as nothing changes. As a polled value can be that old
+	 * refresh() forces a fresh one at the start of a launch.
+	 * What this saves is the getConfig call behind each socks probe while a launch waits for Tor
+	 * (up to several a second) and the requestActivation calls of those probes once Tor is
+	 * active. The 30 second browser checks force their activation request, it doubles as a keep
+	 * alive, and are far enough apart that their port query goes to the helper too.
+	 * The IPC interface is obtained through a provider so that an alternative implementation, such
+	 * as FakeTorHelperIPC, can be plugged in without the real helper
+	 */
+
+public class
+TorConfigMonitor
+	implements ReadinessWaiter.Signal
+{
+	private static final int	POLL_MIN	= 1000;
+	private static final int	POLL_MAX	= 30*1000;
+	
+	private static final Object[]	NO_ARGS = new Object[0];
+	
+	private final TorBrowserPlugin	plugin;
+	private final IPCProvider		provider;
+	
+	private int			socks_port;
+	private long		port_time;
+	private int			port_poll	= POLL_MIN;
+	private boolean		port_stale;
+	
+	private boolean		active;
+	private long		active_time;
+	private int			active_poll	= POLL_MIN;
+	private boolean		active_stale;
+	
+	private boolean		destroyed;
+	
+	private long		generation;
+	
+	protected
+	TorConfigMonitor(
+		TorBrowserPlugin	_plugin,
+		IPCProvider			_provider )
+	{
+		plugin		= _plugin;
+		provider	= _provider;
+	}
+	
+		/**
+		 * @return the socks port, the helper is only asked if the cached value has expired
+		 */
+	
+	protected int
+	getSocksPort()
+		
+		throws Exception
+	{
+		IPCInterface ipc = provider.getIPC();
+		
+		synchronized( this ){
+			
+			if ( socks_port != 0 ){
+				
+				if ( !port_stale && SystemTime.getMonotonousTime() - port_time < port_poll ){
+					
+					return( socks_port );
+				}
+			}
+		}
+		
+		if ( !ipc.canInvoke( "getConfig", NO_ARGS )){
+			
+			throw( new Exception( "Tor Helper Plugin needs updating" ));
+		}
+		
+		int	port;
+		
+		try{
+			Map<String,Object>	config = (Map<String,Object>)ipc.invoke( "getConfig", NO_ARGS );
+			
+			port = (Integer)config.get( "socks_port" );
+		
+		}catch( Throwable e ){
+			
+			throw( new Exception( "Tor Helper Plugin communication failure", e ));
+		}
+		
+		synchronized( this ){
+			
+			port_poll = nextPoll( port_poll, port == socks_port );
+			
+			port_stale = false;
+			
+			if ( port != socks_port ){
+				
+				socks_port = port;
+				
+				changed();
+			}
+			
+			port_time = SystemTime.getMonotonousTime();
+		}
+		
+		return( port );
+	}
+		
+		/**
+		 * Requests that Tor is activated if it isn't known to be
+		 * @param force	always invoke the helper, the request also tells it that Tor is still in use
+		 * @return whether Tor is active
+		 */
+	
+	protected boolean
+	requestActivation(
+		boolean		force )
+	{
+		IPCInterface	ipc;
+		
+		try{
+			ipc = provider.getIPC();
+		
+		}catch( Throwable e ){
+			
+			return( false );
+		}
+		
+		synchronized( this ){
+			
+			if ( active && !force ){
+				
+				if ( !active_stale && SystemTime.getMonotonousTime() - active_time < active_poll ){
+					
+					return( true );
+				}
+			}
+		}
+		
+		boolean	result;
+		
+		try{
+			if ( !ipc.canInvoke( "requestActivation", NO_ARGS )){
+				
+				return( false );
+			}
+			
+			result = (Boolean)ipc.invoke( "requestActivation", NO_ARGS );
+		
+		}catch( Throwable e ){
+			
+			result = false;
+		}
+		
+		synchronized( this ){
+			
+			active_poll = nextPoll( active_poll, result == active );
+			
+			active_stale = false;
+			
+			if ( result != active ){
+				
+				active = result;
+				
+				changed();
+			}
+			
+			active_time = SystemTime.getMonotonousTime();
+		}
+		
+		return( result );
+	}
+	
+		/**
+		 * Makes the next socks port and activation queries go to the helper and restarts the
+		 * polling at its shortest interval as things are likely to change
+		 */
+	
+	protected synchronized void
+	refresh()
+	{
+		port_stale		= true;
+		active_stale	= true;
+		
+		port_poll		= POLL_MIN;
+		active_poll		= POLL_MIN;
+	}
+	
+	private static int
+	nextPoll(
+		int			current,
+		boolean		unchanged )
+	{
+		return( unchanged?Math.min( POLL_MAX, current*2 ):POLL_MIN );
+	}
+	
+	private void
+	changed()
+	{
+			// caller holds the monitor
+		
+		generation++;
+		
+		notifyAll();
+	}
+	
+	@Override
+	public synchronized long
+	getGeneration()
+	{
+		return( generation );
+	}
+	
+	@Override
+	public synchronized boolean
+	waitForChange(
+		long		since,
+		long		timeout )
+	{
+		long	start = SystemTime.getMonotonousTime();
+		
+		while( !destroyed && generation == since ){
+			
+			long	remaining = timeout - ( SystemTime.getMonotonousTime() - start );
+			
+			if ( remaining <= 0 ){
+				
+				break;
+			}
+			
+			try{
+				wait( remaining );
+			
+			}catch( InterruptedException e ){
+				
+				return( false );
+			}
+		}
+		
+		return( !destroyed );
+	}
+	
+	protected synchronized void
+	destroy()
+	{
+		destroyed = true;
+		
+		changed();
+	}
+	
+	protected interface
+	IPCProvider
+	{
+		public IPCInterface
+		getIPC()
+			
+			throws Exception;
+	}
+}